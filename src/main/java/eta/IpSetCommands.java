@@ -0,0 +1,140 @@
+package eta;
+
+import eta.ipaddrcounter.Ip4ParserType;
+import eta.ipaddrcounter.ResumableIPv4UniqCounter;
+import eta.ipaddrcounter.SimpleIPv4UniqCounter;
+import eta.ipaddrcounter.concurrency.MappedBitmapStorage;
+import eta.ipaddrcounter.concurrency.UniqIntBitmap;
+import eta.ipaddrcounter.concurrency.UniqIntPrefixCounts;
+import eta.ipaddrcounter.concurrency.UniqIntSetFile;
+import eta.ipaddrcounter.concurrency.UniqIntThreadSafeCounter;
+import eta.ipaddrcounter.file.FileRegion;
+import eta.ipaddrcounter.file.InputFiles;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Commands that save the distinct IPs of a count as a set file, combine saved sets, see {@link UniqIntSetFile},
+ * and break the distinct IPs down by network prefix, see {@link UniqIntPrefixCounts}:
+ * <pre>
+ * save &lt;input&gt; &lt;set&gt; [parser]          counts the input files and saves their IPs
+ * checkpoint &lt;directory&gt; &lt;set&gt;        saves the IPs of a resumable counter checkpoint
+ * union &lt;result&gt; &lt;set&gt; &lt;set&gt;...        IPs in any of the sets
+ * intersect &lt;result&gt; &lt;set&gt; &lt;set&gt;...    IPs in all of the sets
+ * diff &lt;result&gt; &lt;set&gt; &lt;set&gt;...         IPs in the first set and none of the others
+ * count &lt;set&gt;                        the number of IPs in the set
+ * prefixes &lt;input|set&gt; &lt;length&gt; [n]   the n prefixes of the given length with the most IPs (default 20)
+ * </pre>
+ */
+public class IpSetCommands {
+
+    private static final Set<String> COMMANDS = Set.of("save", "checkpoint", "union", "intersect", "diff", "count",
+            "prefixes");
+
+    public static boolean isCommand(String name) {
+        return COMMANDS.contains(name);
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0 || !isCommand(args[0])) {
+            throw new IllegalArgumentException("Expected one of the commands " + COMMANDS);
+        }
+        long startTime = System.currentTimeMillis();
+        long uniqueCount = switch (args[0]) {
+            case "save" -> save(args);
+            case "checkpoint" -> saveCheckpoint(args);
+            case "union" -> combine(args, UniqIntSetFile.Operation.UNION);
+            case "intersect" -> combine(args, UniqIntSetFile.Operation.INTERSECT);
+            case "diff" -> combine(args, UniqIntSetFile.Operation.DIFFERENCE);
+            case "prefixes" -> printTopPrefixes(args);
+            default -> {
+                requireArgs(args, 2, "count <set>");
+                yield UniqIntSetFile.readCardinality(Path.of(args[1]));
+            }
+        };
+        System.out.println("Unique IPv4 addresses: " + uniqueCount);
+        System.out.println("Total execution time: " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    private static long save(String[] args) {
+        requireArgs(args, 3, "save <input> <set> [parser]");
+        Ip4ParserType parserType = args.length > 3 ? Ip4ParserType.valueOf(args[3].toUpperCase()) : Ip4ParserType.SCALAR;
+        try (UniqIntThreadSafeCounter counter = countInput(args[1], parserType)) {
+            return UniqIntSetFile.write(counter, Path.of(args[2]));
+        }
+    }
+
+    private static long printTopPrefixes(String[] args) {
+        requireArgs(args, 3, "prefixes <input|set> <length> [n]");
+        int prefixLength = Integer.parseInt(args[2]);
+        int n = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int processors = Runtime.getRuntime().availableProcessors();
+        List<UniqIntPrefixCounts.PrefixCount> top;
+        long uniqueCount;
+        Path setFile = Path.of(args[1]);
+        if (UniqIntSetFile.isSetFile(setFile)) {
+            UniqIntBitmap bitmap = UniqIntSetFile.read(setFile);
+            top = UniqIntPrefixCounts.topPrefixes(bitmap, prefixLength, n, processors);
+            uniqueCount = bitmap.getUniqCountAsLong();
+        } else {
+            try (UniqIntThreadSafeCounter counter = countInput(args[1], Ip4ParserType.SCALAR)) {
+                top = UniqIntPrefixCounts.topPrefixes(counter, prefixLength, n, processors);
+                uniqueCount = counter.getUniqCountAsLong();
+            }
+        }
+        for (UniqIntPrefixCounts.PrefixCount prefix : top) {
+            System.out.println(prefix.toCidr() + "\t" + prefix.count());
+        }
+        return uniqueCount;
+    }
+
+    private static UniqIntThreadSafeCounter countInput(String input, Ip4ParserType parserType) {
+        List<Path> paths = new ArrayList<>();
+        for (String pathOrGlob : input.split(File.pathSeparator)) {
+            paths.addAll(InputFiles.resolve(pathOrGlob));
+        }
+        List<FileRegion> regions = new ArrayList<>();
+        for (File file : InputFiles.toUncompressedFiles(paths)) {
+            regions.add(new FileRegion(file, 0, file.length()));
+        }
+        SimpleIPv4UniqCounter engine = new SimpleIPv4UniqCounter(Runtime.getRuntime().availableProcessors(),
+                1024 * 1024, parserType);
+        UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter();
+        engine.countUniqIPv4AtRegionsAsLong(regions, counter);
+        return counter;
+    }
+
+    private static long saveCheckpoint(String[] args) {
+        requireArgs(args, 3, "checkpoint <directory> <set>");
+        Path bitmapFile = Path.of(args[1]).resolve(ResumableIPv4UniqCounter.BITMAP_FILE);
+        if (!Files.isRegularFile(bitmapFile)) {
+            throw new IllegalArgumentException("No checkpoint bitmap: " + bitmapFile);
+        }
+        try (UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter(
+                new MappedBitmapStorage(bitmapFile, UniqIntThreadSafeCounter.ARRAY_SIZE))) {
+            return UniqIntSetFile.write(counter, Path.of(args[2]));
+        }
+    }
+
+    private static long combine(String[] args, UniqIntSetFile.Operation operation) {
+        requireArgs(args, 4, args[0] + " <result> <set> <set>...");
+        List<Path> sets = Arrays.stream(args, 2, args.length).map(Path::of).toList();
+        UniqIntBitmap result = UniqIntSetFile.read(sets.get(0));
+        for (Path set : sets.subList(1, sets.size())) {
+            UniqIntSetFile.combine(result, set, operation);
+        }
+        return UniqIntSetFile.write(result, Path.of(args[1]));
+    }
+
+    private static void requireArgs(String[] args, int number, String usage) {
+        if (args.length < number) {
+            throw new IllegalArgumentException("Usage: " + usage);
+        }
+    }
+}
@@ -1,39 +1,134 @@
 package eta;
 
+import eta.ipaddrcounter.IOSeparateIPv4UniqCounter;
 import eta.ipaddrcounter.IPv4UniqCounter;
+import eta.ipaddrcounter.Ip4ParserFactory;
+import eta.ipaddrcounter.Ip4ParserType;
+import eta.ipaddrcounter.LiveIPv4UniqCounter;
+import eta.ipaddrcounter.MappedIPv4UniqCounter;
+import eta.ipaddrcounter.PrivateBitmapsIPv4UniqCounter;
+import eta.ipaddrcounter.ResumableIPv4UniqCounter;
 import eta.ipaddrcounter.SimpleIPv4UniqCounter;
+import eta.ipaddrcounter.concurrency.UniqIntCounterFactory;
+import eta.ipaddrcounter.concurrency.UniqIntCounterType;
+import eta.ipaddrcounter.concurrency.UniqIntThreadSafeCounter;
+import eta.ipaddrcounter.file.InputFiles;
 import eta.ipaddrcounter.task.FileChunkProcessor;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
 
-    public static void main(String[] args) {
-        long totalStartTime = System.currentTimeMillis();
+    private static final String STDIN = "-";
+    private static final String FOLLOW = "follow";
 
-        Path path = Paths.get("C:\\tools\\ip_addresses");
-        if (args.length > 0) {
-            path = Path.of(args[0]);
+    public static void main(String[] args) {
+        if (args.length > 0 && IpSetCommands.isCommand(args[0])) {
+            IpSetCommands.main(args);
+            return;
         }
-        System.out.println("start counting ips at file: " + path);
-
-
-
-//        IPv4UniqCounter counter = new IOSeparateIPv4UniqCounter();
-        IPv4UniqCounter counter = new SimpleIPv4UniqCounter();
-        int uniqueCount = counter.countUniqIPv4AtFile(path);
-
+        if (args.length > 0 && FOLLOW.equals(args[0])) {
+            follow(args);
+            return;
+        }
+        long totalStartTime = System.currentTimeMillis();
 
+        String input = args.length > 0 ? args[0] : "C:\\tools\\ip_addresses";
+        boolean fromStdin = STDIN.equals(input);
+        String engine = args.length > 1 ? args[1] : fromStdin ? "io" : "simple";
+        Ip4ParserType parserType = args.length > 2 ? Ip4ParserType.valueOf(args[2].toUpperCase()) : Ip4ParserType.SCALAR;
+        int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        UniqIntCounterType counterType = args.length > 4
+                ? UniqIntCounterType.valueOf(args[4].toUpperCase()) : UniqIntCounterType.HEAP;
+        Path checkpointDir = Path.of(args.length > 5 ? args[5] : "ipaddrcounter-checkpoint");
+        IPv4UniqCounter counter = createCounter(engine, parserType.batched(batchSize), counterType, checkpointDir);
 
+        long uniqueCount;
+        long inputBytes;
+        if (fromStdin) {
+            if (!(counter instanceof IOSeparateIPv4UniqCounter ioCounter)) {
+                throw new IllegalArgumentException("Reading from stdin requires the io engine, not " + engine);
+            }
+            System.out.println("start counting ips at stdin (engine: " + engine + ", parser: " + parserType
+                    + ", batch size: " + batchSize + ", counter: " + counterType + ")");
+            // a FileChannel on the stdin descriptor reads straight into the buffers, unlike Channels.newChannel
+            try (FileChannel stdin = new FileInputStream(FileDescriptor.in).getChannel()) {
+                uniqueCount = ioCounter.countUniqIPv4AtChannelAsLong(stdin);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            inputBytes = -1;
+        } else {
+            // several files, directories or globs are separated like a class path, e.g. "a.txt:logs/*.txt"
+            List<Path> paths = new ArrayList<>();
+            for (String pathOrGlob : input.split(File.pathSeparator)) {
+                paths.addAll(InputFiles.resolve(pathOrGlob));
+            }
+            System.out.println("start counting ips at: " + paths + " (engine: " + engine + ", parser: " + parserType
+                    + ", batch size: " + batchSize + ", counter: " + counterType + ")");
+            uniqueCount = counter.countUniqIPv4AtFilesAsLong(paths);
+            inputBytes = InputFiles.toFiles(paths).stream().mapToLong(File::length).sum();
+        }
 
         long totalDuration = System.currentTimeMillis() - totalStartTime;
         long minutes = totalDuration / 60000;
         long seconds = (totalDuration % 60000) / 1000;
         System.out.println("Unique IPv4 addresses: " + uniqueCount);
-        System.out.println("File bytes: " + path.toFile().length());
+        if (inputBytes >= 0) {
+            System.out.println("File bytes: " + inputBytes);
+        }
         System.out.println("Total execution time: " + minutes + "min" + seconds + "sec");
     }
 
+    /**
+     * Follows a growing file and prints the running unique count: follow &lt;file&gt; [interval seconds] [parser].
+     */
+    private static void follow(String[] args) {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: follow <file> [interval seconds] [parser]");
+        }
+        File file = InputFiles.toUncompressedFiles(List.of(Path.of(args[1]))).get(0);
+        Duration interval = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 5);
+        Ip4ParserType parserType = args.length > 3 ? Ip4ParserType.valueOf(args[3].toUpperCase()) : Ip4ParserType.SCALAR;
+        System.out.println("following " + file + " (interval: " + interval.toSeconds() + "s, parser: " + parserType + ")");
+        try (UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter()) {
+            new LiveIPv4UniqCounter(file, 0, counter, interval, 1024 * 1024, parserType,
+                    count -> System.out.println(Instant.now() + " unique IPv4 addresses: " + count)).run();
+        }
+    }
+
+    private static IPv4UniqCounter createCounter(String engine, Ip4ParserFactory parserFactory,
+                                                 UniqIntCounterFactory counterFactory, Path checkpointDir) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return switch (engine) {
+            case "simple" -> new SimpleIPv4UniqCounter(processors, 1024 * 1024, parserFactory, counterFactory);
+            case "simple_direct" -> new SimpleIPv4UniqCounter(processors, 1024 * 1024, 16, true,
+                    parserFactory, counterFactory);
+            case "io" -> new IOSeparateIPv4UniqCounter(Math.max(processors / 2, 1), processors,
+                    1024 * 1024, processors * 3, parserFactory, counterFactory);
+            case "io_virtual" -> IOSeparateIPv4UniqCounter.builder().ioThreads(64).cpuThreads(processors)
+                    .bufferSize(256 * 1024).buffersNumber(256).virtualIoThreads(true)
+                    .parserFactory(parserFactory).counterFactory(counterFactory).build();
+            case "io_direct" -> IOSeparateIPv4UniqCounter.builder().cpuThreads(processors).directIo(true)
+                    .parserFactory(parserFactory).counterFactory(counterFactory).build();
+            case "mapped" -> new MappedIPv4UniqCounter(processors, 256 * 1024 * 1024, 1024 * 1024,
+                    parserFactory, counterFactory);
+            case "private" -> new PrivateBitmapsIPv4UniqCounter(processors, 1024 * 1024, parserFactory);
+            case "resumable" -> new ResumableIPv4UniqCounter(checkpointDir, 4L * 1024 * 1024 * 1024, processors,
+                    1024 * 1024, parserFactory);
+            default -> throw new IllegalArgumentException("Unknown engine: " + engine
+                    + " (expected simple, simple_direct, io, io_virtual, io_direct, mapped, private or resumable)");
+        };
+    }
+
 }
\ No newline at end of file
@@ -1,30 +1,72 @@
 package eta.ipaddrcounter;
 
-import eta.ipaddrcounter.concurrency.UniqIntThreadSafeCounter;
+import eta.ipaddrcounter.concurrency.IntSink;
+import eta.ipaddrcounter.concurrency.UniqIntBatch;
 import eta.ipaddrcounter.file.BytesParser;
 import eta.ipaddrcounter.file.FastByteBuffer;
 import eta.ipaddrcounter.task.FileChunkProcessor;
 
+import java.nio.ByteBuffer;
+
 public class AccumulatingCountIp4Parser implements BytesParser {
-    private final UniqIntThreadSafeCounter counter;
+    private static final int SCRATCH_SIZE = 64 * 1024;
+
+    private final IntSink sink;
 
     private int ipAsInt = 0;
     private int currentPart = 0;
     private int partCount = 0;
+    private byte[] scratch;
+
+    public AccumulatingCountIp4Parser(IntSink sink) {
+        this(sink, 0);
+    }
 
-    public AccumulatingCountIp4Parser(UniqIntThreadSafeCounter counter) {
-        this.counter = counter;
+    /**
+     * @param sink      the sink parsed IPs are passed to, e.g. a counter
+     * @param batchSize the size of the {@link UniqIntBatch} IPs are collected in before they are passed on,
+     *                  or 0 to pass every IP directly
+     */
+    public AccumulatingCountIp4Parser(IntSink sink, int batchSize) {
+        this.sink = batchSize > 0 ? new UniqIntBatch(sink, batchSize) : sink;
     }
 
     @Override
     public void parseBuffer(FastByteBuffer fastBuf) {
+        parseArray(fastBuf.array, 0, fastBuf.length);
+    }
+
+    /**
+     * Parses a buffer without a backing array, e.g. a memory-mapped one, by copying it to a small scratch array
+     * piece by piece, so the state machine exists only once.
+     */
+    @Override
+    public void parseByteBuffer(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            int from = buf.arrayOffset() + buf.position();
+            parseArray(buf.array(), from, from + buf.remaining());
+            return;
+        }
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+        int end = buf.limit();
+        for (int pos = buf.position(); pos < end; pos += SCRATCH_SIZE) {
+            int length = Math.min(SCRATCH_SIZE, end - pos);
+            buf.get(pos, scratch, 0, length);
+            parseArray(scratch, 0, length);
+        }
+    }
+
+    /**
+     * Parses the bytes [from, to) of the array, continuing the IP left unfinished by the previous call.
+     */
+    void parseArray(byte[] array, int from, int to) {
         int ip = this.ipAsInt;
         int part = this.currentPart;
         int count = this.partCount;
 
-        byte[] array = fastBuf.array;
-        int end = fastBuf.length;
-        for (int i = 0; i < end; i++) {
+        for (int i = from; i < to; i++) {
             byte b = array[i];
             if (b >= '0' && b <= '9') {
                 part = part * 10 + (b - '0');
@@ -35,7 +77,7 @@ public class AccumulatingCountIp4Parser implements BytesParser {
             } else if (b == '\n') {
                 if (count == 3) {
                     ip = (ip << 8) | part;
-                    counter.add(ip);
+                    add(ip);
                 }
                 ip = 0;
                 part = 0;
@@ -55,10 +97,15 @@ public class AccumulatingCountIp4Parser implements BytesParser {
     public void afterLastBuffer() {
         if (partCount == 3) {
             ipAsInt = (ipAsInt << 8) | currentPart;
-            counter.add(ipAsInt);
+            add(ipAsInt);
         }
         ipAsInt = 0;
         currentPart = 0;
         partCount = 0;
+        sink.flush();
+    }
+
+    private void add(int ip) {
+        sink.accept(ip);
     }
 }
@@ -1,13 +1,24 @@
 package eta.ipaddrcounter;
 
+import eta.ipaddrcounter.concurrency.EarlyStop;
+import eta.ipaddrcounter.concurrency.RingBufferQueue;
 import eta.ipaddrcounter.concurrency.TasksUtil;
+import eta.ipaddrcounter.concurrency.UniqIntCounter;
+import eta.ipaddrcounter.concurrency.UniqIntCounterFactory;
+import eta.ipaddrcounter.concurrency.UniqIntCounterType;
 import eta.ipaddrcounter.concurrency.UniqIntThreadSafeCounter;
+import eta.ipaddrcounter.file.BytesParser;
 import eta.ipaddrcounter.file.FastByteBuffer;
+import eta.ipaddrcounter.file.FileRegion;
 import eta.ipaddrcounter.file.FileSplitter;
+import eta.ipaddrcounter.file.GzipFiles;
+import eta.ipaddrcounter.file.GzipRegion;
+import eta.ipaddrcounter.file.InputFiles;
 import eta.ipaddrcounter.task.queued.NewLineAlignedBufferConsumer;
 import eta.ipaddrcounter.task.queued.NewLineAlignedBufferProducer;
 
 import java.io.File;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -17,7 +28,9 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * IOSeparateIPv4UniqCounter implements a two-stage pipeline for counting unique values in a file.
  * I/O threads read file chunks sequentially into a pool of free buffers, while CPU threads process the filled buffers.
- * All configuration settings (I/O threads, CPU threads, buffer size, and number of buffers) are provided via the constructor.
+ * A single stream, such as stdin, can be counted with {@link #countUniqIPv4AtChannelAsLong(ReadableByteChannel)}.
+ * All configuration settings (I/O threads, CPU threads, buffer size, and number of buffers) are provided via
+ * the constructors, or via {@link #builder()} for virtual I/O threads and direct I/O.
  */
 public class IOSeparateIPv4UniqCounter implements IPv4UniqCounter {
 
@@ -26,26 +39,74 @@ public class IOSeparateIPv4UniqCounter implements IPv4UniqCounter {
     private final int cpuThreads;
     private final int bufferSize;
     private final int buffersNumber;
+    private final boolean virtualIoThreads;
+    private final boolean directIo;
+    private final Ip4ParserFactory parserFactory;
+    private final UniqIntCounterFactory counterFactory;
 
     /**
-     * Constructs an IOSeparateIPv4UniqCounter with the specified configuration.
-     *
-     * @param ioThreads     the number of I/O threads (e.g., 1 for HDD or cpuThreads/2 for SSD)
-     * @param cpuThreads    the number of CPU processing threads
-     * @param bufferSize    the size of each buffer in bytes
-     * @param buffersNumber the total number of buffers (must be at least equal to cpuThreads)
+     * Constructs an IOSeparateIPv4UniqCounter with the settings of the builder.
      */
-    public IOSeparateIPv4UniqCounter(int ioThreads, int cpuThreads, int bufferSize, int buffersNumber) {
+    private IOSeparateIPv4UniqCounter(Builder builder) {
+        this.ioThreads = builder.ioThreads;
+        this.cpuThreads = builder.cpuThreads;
+        this.bufferSize = builder.bufferSize;
+        this.buffersNumber = builder.buffersNumber;
+        this.virtualIoThreads = builder.virtualIoThreads;
+        this.directIo = builder.directIo;
+        this.parserFactory = builder.parserFactory;
+        this.counterFactory = builder.counterFactory;
         if (ioThreads <= 0) throw new IllegalArgumentException("IO threads must be greater than 0");
         if (cpuThreads <= 0) throw new IllegalArgumentException("CPU threads must be greater than 0");
         if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be greater than 0");
         if (buffersNumber <= 0) throw new IllegalArgumentException("Buffers number must be greater than 0");
         if (buffersNumber < cpuThreads)
             throw new IllegalArgumentException("Buffers number must be at least equal to the number of CPU threads");
-        this.ioThreads = ioThreads;
-        this.cpuThreads = cpuThreads;
-        this.bufferSize = bufferSize;
-        this.buffersNumber = buffersNumber;
+        if (parserFactory == null) throw new IllegalArgumentException("Parser factory must not be null");
+        if (counterFactory == null) throw new IllegalArgumentException("Counter factory must not be null");
+    }
+
+    /**
+     * Constructs an IOSeparateIPv4UniqCounter with the specified configuration and a fixed pool of I/O threads.
+     *
+     * @param ioThreads      the number of I/O threads (e.g., 1 for HDD or cpuThreads/2 for SSD)
+     * @param cpuThreads     the number of CPU processing threads
+     * @param bufferSize     the size of each buffer in bytes
+     * @param buffersNumber  the total number of buffers (must be at least equal to cpuThreads)
+     * @param parserFactory  the factory of the parsers used by the CPU threads
+     * @param counterFactory the factory of the counter shared by the processing threads
+     */
+    public IOSeparateIPv4UniqCounter(int ioThreads, int cpuThreads, int bufferSize, int buffersNumber,
+                                     Ip4ParserFactory parserFactory,
+                                     UniqIntCounterFactory counterFactory) {
+        this(builder().ioThreads(ioThreads).cpuThreads(cpuThreads).bufferSize(bufferSize).buffersNumber(buffersNumber)
+                .parserFactory(parserFactory).counterFactory(counterFactory));
+    }
+
+    /**
+     * Constructs an IOSeparateIPv4UniqCounter with the specified configuration and the heap counter.
+     *
+     * @param ioThreads     the number of I/O threads (e.g., 1 for HDD or cpuThreads/2 for SSD)
+     * @param cpuThreads    the number of CPU processing threads
+     * @param bufferSize    the size of each buffer in bytes
+     * @param buffersNumber the total number of buffers (must be at least equal to cpuThreads)
+     * @param parserFactory the factory of the parsers used by the CPU threads
+     */
+    public IOSeparateIPv4UniqCounter(int ioThreads, int cpuThreads, int bufferSize, int buffersNumber,
+                                     Ip4ParserFactory parserFactory) {
+        this(ioThreads, cpuThreads, bufferSize, buffersNumber, parserFactory, UniqIntCounterType.HEAP);
+    }
+
+    /**
+     * Constructs an IOSeparateIPv4UniqCounter with the specified configuration and the scalar parser.
+     *
+     * @param ioThreads     the number of I/O threads (e.g., 1 for HDD or cpuThreads/2 for SSD)
+     * @param cpuThreads    the number of CPU processing threads
+     * @param bufferSize    the size of each buffer in bytes
+     * @param buffersNumber the total number of buffers (must be at least equal to cpuThreads)
+     */
+    public IOSeparateIPv4UniqCounter(int ioThreads, int cpuThreads, int bufferSize, int buffersNumber) {
+        this(ioThreads, cpuThreads, bufferSize, buffersNumber, Ip4ParserType.SCALAR);
     }
 
     /**
@@ -83,74 +144,306 @@ public class IOSeparateIPv4UniqCounter implements IPv4UniqCounter {
     }
 
     /**
-     * Counts the unique values in the given file using separate I/O and CPU processing.
-     * I/O threads read file chunks into free buffers while CPU threads process the filled buffers.
+     * Returns a builder for the settings that have no convenience constructor: virtual I/O threads and direct I/O.
+     * Unset settings get the defaults of {@link #IOSeparateIPv4UniqCounter()}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Counts the unique values in the given files using separate I/O and CPU processing.
+     * I/O threads read the chunks of all files into free buffers while CPU threads process the filled buffers.
+     * Files smaller than a chunk are read whole by one I/O thread. Gzip files are decompressed by the I/O threads,
+     * BGZF files in parallel regions of blocks, see {@link GzipFiles}.
      *
-     * @param path the path to the input file
-     * @return the total count of unique values found in the file
-     * @throws IllegalArgumentException if the file is not accessible or parameters are invalid
+     * @param paths the paths to the input files or directories
+     * @return the total count of unique values found in all files
+     * @throws IllegalArgumentException if a file is not accessible or parameters are invalid
      */
     @Override
-    public int countUniqIPv4AtFile(Path path) {
-        if (path == null) throw new IllegalArgumentException("Path must not be null");
+    public long countUniqIPv4AtFilesAsLong(List<Path> paths) {
+        List<File> files = InputFiles.toFiles(paths);
+        return countUniqAtFilesInternal(files);
+    }
 
-        File file = path.toFile();
-        if (!file.exists())
-            throw new IllegalArgumentException("File does not exist: " + file.getAbsolutePath());
-        if (!file.isFile())
-            throw new IllegalArgumentException("Not a valid file: " + file.getAbsolutePath());
-        if (!file.canRead())
-            throw new IllegalArgumentException("File is not readable: " + file.getAbsolutePath());
+    /**
+     * Returns whether the given files contain at least {@code n} unique values. With a bitmap counter
+     * ({@link UniqIntThreadSafeCounter}) every CPU thread checks the live count after each buffer and the first one
+     * to see it reach {@code n} interrupts the I/O and CPU threads, so the rest of the input is not read.
+     * The buffers of the run are dropped with the run. Other counters cannot be read while threads add to them,
+     * so the files are counted in full.
+     *
+     * @param paths the paths to the input files or directories
+     * @param n     the threshold, not negative
+     * @return true if the number of unique values is at least {@code n}
+     * @throws IllegalArgumentException if a file is not accessible or parameters are invalid
+     */
+    @Override
+    public boolean hasAtLeastNUniq(List<Path> paths, long n) {
+        if (n < 0) throw new IllegalArgumentException("Threshold must not be negative");
+        List<File> files = InputFiles.toFiles(paths);
+        if (n == 0) {
+            return true;
+        }
+        try (UniqIntCounter counter = counterFactory.create()) {
+            if (!(counter instanceof UniqIntThreadSafeCounter liveCounter)) {
+                return countUniqAtFilesInternal(files, counter) >= n;
+            }
+            EarlyStop stop = new EarlyStop();
+            countUniqAtFilesInternal(files, counter,
+                    sink -> new ThresholdParser(parserFactory.create(sink), liveCounter, n, stop), stop);
+            return liveCounter.getUniqCountAsLong() >= n;
+        }
+    }
 
-        return countUniqAtFileInternal(file);
+    private long countUniqAtFilesInternal(List<File> files) {
+        try (UniqIntCounter counter = counterFactory.create()) {
+            return countUniqAtFilesInternal(files, counter);
+        }
     }
 
-    private int countUniqAtFileInternal(File file) {
-        UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter();
+    /**
+     * Counts the unique values read from the channel until its end, e.g. stdin, a named pipe or a decompressor.
+     * A stream cannot be split, so a single I/O thread reads it while the CPU threads process the filled buffers.
+     * The channel is not closed.
+     *
+     * @param channel the channel to read newline-separated IPs from
+     * @return the total count of unique values found in the stream
+     * @throws IllegalArgumentException if the channel is null
+     */
+    public long countUniqIPv4AtChannelAsLong(ReadableByteChannel channel) {
+        if (channel == null) throw new IllegalArgumentException("Channel must not be null");
 
-        BlockingQueue<FastByteBuffer> freeBuffers = new ArrayBlockingQueue<>(buffersNumber);
-        BlockingQueue<FastByteBuffer> workQueue = new ArrayBlockingQueue<>(buffersNumber + cpuThreads);//+ for PILL
+        try (UniqIntCounter counter = counterFactory.create()) {
+            return countUniqAtChannelInternal(channel, counter);
+        }
+    }
 
-        for (int i = 0; i < buffersNumber; i++) {
-            freeBuffers.add(new FastByteBuffer(new byte[bufferSize]));
+    private long countUniqAtFilesInternal(List<File> files, UniqIntCounter counter) {
+        return countUniqAtFilesInternal(files, counter, parserFactory, new EarlyStop());
+    }
+
+    private long countUniqAtFilesInternal(List<File> files, UniqIntCounter counter, Ip4ParserFactory parserFactory,
+                                          EarlyStop stop) {
+        List<File> plainFiles = new ArrayList<>();
+        List<GzipRegion> gzipRegions = new ArrayList<>();
+        for (File file : files) {
+            if (GzipFiles.isGzip(file)) {
+                gzipRegions.addAll(GzipFiles.splitOnRegions(ioThreads, file));
+            } else {
+                plainFiles.add(file);
+            }
+        }
+        var regions = FileSplitter.splitFilesOnNewLineAlignedChunks(ioThreads, plainFiles, bufferSize);
+        if (regions.isEmpty() && gzipRegions.isEmpty()) {
+            return 0;
+        }
+        RingBufferQueue<FastByteBuffer> freeBuffers = createFreeBuffers();
+        RingBufferQueue<FastByteBuffer> workQueue = createWorkQueue();
+        // the last producer to finish sends the poison pills, so count producers rather than I/O threads
+        AtomicLong fileReadersCounter = new AtomicLong(regions.size() + gzipRegions.size());
+
+        var ioTasks = new ArrayList<NewLineAlignedBufferProducer>(regions.size() + gzipRegions.size());
+        for (GzipRegion region : gzipRegions) {
+            // compressed regions are decompressed by the I/O threads
+            ioTasks.add(new NewLineAlignedBufferProducer(
+                    () -> GzipFiles.open(region),
+                    freeBuffers,
+                    workQueue,
+                    fileReadersCounter,
+                    cpuThreads,
+                    bufferSize));
+        }
+        for (FileRegion region : regions) {
+            ioTasks.add(new NewLineAlignedBufferProducer(
+                    region.file(),
+                    region.start(),
+                    region.end(),
+                    freeBuffers,
+                    workQueue,
+                    fileReadersCounter,
+                    cpuThreads,
+                    bufferSize,
+                    directIo));
         }
 
-        AtomicLong fileReadersCounter = new AtomicLong(ioThreads);
-        var chunks = FileSplitter.splitOnNewLineAlignedChunks(ioThreads, file, bufferSize);
-        if (chunks.isEmpty()) {
-            throw new IllegalStateException("No file chunks created");
+        return runPipeline(ioTasks, freeBuffers, workQueue, counter, parserFactory, stop);
+    }
+
+    private long countUniqAtChannelInternal(ReadableByteChannel channel, UniqIntCounter counter) {
+        RingBufferQueue<FastByteBuffer> freeBuffers = createFreeBuffers();
+        RingBufferQueue<FastByteBuffer> workQueue = createWorkQueue();
+
+        var ioTask = new NewLineAlignedBufferProducer(
+                channel,
+                freeBuffers,
+                workQueue,
+                new AtomicLong(1),
+                cpuThreads,
+                bufferSize);
+
+        return runPipeline(List.of(ioTask), freeBuffers, workQueue, counter, parserFactory, new EarlyStop());
+    }
+
+    private RingBufferQueue<FastByteBuffer> createFreeBuffers() {
+        RingBufferQueue<FastByteBuffer> freeBuffers = new RingBufferQueue<>(buffersNumber);
+        for (int i = 0; i < buffersNumber; i++) {
+            freeBuffers.add(new FastByteBuffer(new byte[bufferSize]));
         }
+        return freeBuffers;
+    }
 
-        var ioTasks = chunks.stream()
-                .map(chunk -> new NewLineAlignedBufferProducer(
-                        file,
-                        chunk.start(),
-                        chunk.end(),
-                        freeBuffers,
-                        workQueue,
-                        fileReadersCounter,
-                        cpuThreads,
-                        bufferSize))
-                .toList();
+    private RingBufferQueue<FastByteBuffer> createWorkQueue() {
+        return new RingBufferQueue<>(buffersNumber + cpuThreads);//+ for PILL
+    }
 
+    private long runPipeline(List<NewLineAlignedBufferProducer> ioTasks,
+                             RingBufferQueue<FastByteBuffer> freeBuffers,
+                             RingBufferQueue<FastByteBuffer> workQueue,
+                             UniqIntCounter counter,
+                             Ip4ParserFactory parserFactory,
+                             EarlyStop stop) {
         var cpuTasks = new ArrayList<Runnable>(cpuThreads);
         for (int i = 0; i < cpuThreads; i++) {
-            AccumulatingCountIp4Parser parser = new AccumulatingCountIp4Parser(counter);
+            BytesParser parser = parserFactory.create(counter);
             cpuTasks.add(new NewLineAlignedBufferConsumer(freeBuffers, workQueue, parser));
         }
 
-        ThreadFactory ioThreadFactory = TasksUtil.getThreadFactoryForExecutor("io-ipaddrcounter");
         ThreadFactory cpuThreadFactory = TasksUtil.getThreadFactoryForExecutor("cpu-ipaddrcounter");
-        try (ExecutorService ioExecutor = Executors.newFixedThreadPool(ioThreads, ioThreadFactory);
+        try (ExecutorService ioExecutor = createIoExecutor(ioTasks.size());
              ExecutorService cpuExecutor = Executors.newFixedThreadPool(cpuThreads, cpuThreadFactory)) {
+            // a stop interrupts both stages, so no reader stays blocked on a free buffer
+            stop.register(ioExecutor);
+            stop.register(cpuExecutor);
 
             List<Future<?>> ioFutures = TasksUtil.execute(ioTasks, ioExecutor);
             List<Future<?>> cpuFutures = TasksUtil.execute(cpuTasks, cpuExecutor);
 
-            TasksUtil.waitForFutures(ioFutures, ioExecutor);
-            TasksUtil.waitForFutures(cpuFutures, cpuExecutor);
+            TasksUtil.waitForFutures(ioFutures, ioExecutor, stop);
+            TasksUtil.waitForFutures(cpuFutures, cpuExecutor, stop);
         }
 
-        return counter.getUniqCount();
+        return counter.getUniqCountAsLong();
+    }
+
+    private ExecutorService createIoExecutor(int tasksNumber) {
+        if (virtualIoThreads) {
+            // one virtual thread per reader; blocking file reads temporarily add carrier threads
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("io-ipaddrcounter-v", 0).factory());
+        }
+        ThreadFactory ioThreadFactory = TasksUtil.getThreadFactoryForExecutor("io-ipaddrcounter");
+        return Executors.newFixedThreadPool(Math.min(ioThreads, tasksNumber), ioThreadFactory);
+    }
+
+    /**
+     * Collects the settings of an {@link IOSeparateIPv4UniqCounter}, see {@link #builder()}.
+     */
+    public static final class Builder {
+        private int ioThreads;
+        private int cpuThreads = Runtime.getRuntime().availableProcessors();
+        private int bufferSize = DEF_BUFFER_SIZE;
+        private int buffersNumber;
+        private boolean virtualIoThreads;
+        private boolean directIo;
+        private Ip4ParserFactory parserFactory = Ip4ParserType.SCALAR;
+        private UniqIntCounterFactory counterFactory = UniqIntCounterType.HEAP;
+        private boolean ioThreadsSet;
+        private boolean buffersNumberSet;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of I/O threads (e.g., 1 for HDD or cpuThreads/2 for SSD), or the queue depth
+         * with virtual I/O threads (e.g., 64 for NVMe). Defaults to half the CPU threads.
+         */
+        public Builder ioThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+            this.ioThreadsSet = true;
+            return this;
+        }
+
+        /**
+         * Sets the number of CPU processing threads. Defaults to the available processors.
+         */
+        public Builder cpuThreads(int cpuThreads) {
+            this.cpuThreads = cpuThreads;
+            return this;
+        }
+
+        /**
+         * Sets the size of each buffer in bytes. Defaults to 1 MB.
+         */
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Sets the total number of buffers, at least the number of CPU threads. Defaults to three per CPU thread.
+         */
+        public Builder buffersNumber(int buffersNumber) {
+            this.buffersNumber = buffersNumber;
+            this.buffersNumberSet = true;
+            return this;
+        }
+
+        /**
+         * Sets whether every reader runs on its own virtual thread instead of a fixed platform pool.
+         * <p>
+         * With virtual I/O threads {@code ioThreads} is the I/O queue depth: the number of readers with a positional
+         * read in flight. NVMe devices need tens to hundreds of outstanding reads for full bandwidth, which is too many
+         * platform threads. Only readers that hold a free buffer can read, so {@code buffersNumber} should be larger
+         * than the queue depth. The CPU threads stay on a fixed pool.
+         * <p>
+         * The readers still use blocking {@code RandomAccessFile} reads, which pin their carrier thread, and the JDK
+         * adds a carrier thread for every blocked read. A queue depth of 64 therefore still means up to about 64
+         * platform threads while the reads are in flight; the depth only bounds the number of regions read at once,
+         * and the reads are not asynchronous. See {@code IoQueueDepthBenchmark} for measurements.
+         */
+        public Builder virtualIoThreads(boolean virtualIoThreads) {
+            this.virtualIoThreads = virtualIoThreads;
+            return this;
+        }
+
+        /**
+         * Sets whether uncompressed files are read with direct I/O ({@code O_DIRECT}), bypassing the page cache:
+         * each reader reads block-aligned ranges into its own aligned native buffer and copies them into
+         * the pipeline buffers, see {@link eta.ipaddrcounter.file.DirectIo}.
+         */
+        public Builder directIo(boolean directIo) {
+            this.directIo = directIo;
+            return this;
+        }
+
+        /**
+         * Sets the factory of the parsers used by the CPU threads. Defaults to the scalar parser.
+         */
+        public Builder parserFactory(Ip4ParserFactory parserFactory) {
+            this.parserFactory = parserFactory;
+            return this;
+        }
+
+        /**
+         * Sets the factory of the counter shared by the processing threads. Defaults to the heap bitmap.
+         */
+        public Builder counterFactory(UniqIntCounterFactory counterFactory) {
+            this.counterFactory = counterFactory;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a setting is invalid
+         */
+        public IOSeparateIPv4UniqCounter build() {
+            if (!ioThreadsSet) {
+                ioThreads = Math.max(cpuThreads / 2, 1);
+            }
+            if (!buffersNumberSet) {
+                buffersNumber = cpuThreads * 3;
+            }
+            return new IOSeparateIPv4UniqCounter(this);
+        }
     }
 }
@@ -1,14 +1,73 @@
 package eta.ipaddrcounter;
 
+import eta.ipaddrcounter.file.InputFiles;
+
 import java.nio.file.Path;
+import java.util.List;
 
 public interface IPv4UniqCounter {
+    /**
+     * Counts the unique integer values across all given files into one shared counter.
+     * Directories are expanded into the files they contain, see {@link InputFiles#toFiles(List)};
+     * glob patterns can be resolved beforehand with {@link InputFiles#resolve(String)}.
+     *
+     * @param paths the paths to the input files or directories
+     * @return the total count of unique values found in all files, up to 2^32
+     * @throws IllegalArgumentException if a file is not accessible or parameters are invalid
+     */
+    long countUniqIPv4AtFilesAsLong(List<Path> paths);
+
+    /**
+     * Returns whether the given files contain at least {@code n} unique values, e.g. for alerting on the number
+     * of sources. Engines that can read a running count stop reading as soon as it reaches {@code n}, so a file
+     * that crosses the threshold early is not read to the end; by default the files are counted in full.
+     *
+     * @param paths the paths to the input files or directories
+     * @param n     the threshold, not negative
+     * @return true if the number of unique values is at least {@code n}
+     * @throws IllegalArgumentException if a file is not accessible or parameters are invalid
+     */
+    default boolean hasAtLeastNUniq(List<Path> paths, long n) {
+        if (n < 0) throw new IllegalArgumentException("Threshold must not be negative");
+        return countUniqIPv4AtFilesAsLong(paths) >= n;
+    }
+
+    /**
+     * Returns whether the given file contains at least {@code n} unique values,
+     * see {@link #hasAtLeastNUniq(List, long)}.
+     *
+     * @param path the path to the input file
+     * @param n    the threshold, not negative
+     * @return true if the number of unique values is at least {@code n}
+     * @throws IllegalArgumentException if the file is not accessible or parameters are invalid
+     */
+    default boolean hasAtLeastNUniq(Path path, long n) {
+        if (path == null) throw new IllegalArgumentException("Path must not be null");
+        return hasAtLeastNUniq(List.of(path), n);
+    }
+
+    /**
+     * Counts the unique integer values in the given file.
+     *
+     * @param path the path to the input file
+     * @return the total count of unique values found in the file, up to 2^32
+     * @throws IllegalArgumentException if the file is not accessible or parameters are invalid
+     */
+    default long countUniqIPv4AtFileAsLong(Path path) {
+        if (path == null) throw new IllegalArgumentException("Path must not be null");
+        return countUniqIPv4AtFilesAsLong(List.of(path));
+    }
+
     /**
      * Counts the unique integer values in the given file.
      *
      * @param path the path to the input file
      * @return the total count of unique values found in the file
      * @throws IllegalArgumentException if the file is not accessible or parameters are invalid
+     * @throws ArithmeticException      if the count does not fit into an int,
+     *                                  use {@link #countUniqIPv4AtFileAsLong(Path)} instead
      */
-    int countUniqIPv4AtFile(Path path);
+    default int countUniqIPv4AtFile(Path path) {
+        return Math.toIntExact(countUniqIPv4AtFileAsLong(path));
+    }
 }
@@ -0,0 +1,17 @@
+package eta.ipaddrcounter;
+
+import eta.ipaddrcounter.concurrency.IntSink;
+import eta.ipaddrcounter.file.BytesParser;
+
+/**
+ * Creates the parsers used by the processing threads of a counter, one parser per thread.
+ * See {@link Ip4ParserType} for the available implementations.
+ */
+@FunctionalInterface
+public interface Ip4ParserFactory {
+    /**
+     * Creates a new parser that passes parsed IPs to the given sink, usually the shared counter.
+     * A parser is stateful and must be used by one thread.
+     */
+    BytesParser create(IntSink sink);
+}
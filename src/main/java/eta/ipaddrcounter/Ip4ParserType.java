@@ -0,0 +1,50 @@
+package eta.ipaddrcounter;
+
+import eta.ipaddrcounter.concurrency.IntSink;
+import eta.ipaddrcounter.concurrency.UniqIntBatch;
+import eta.ipaddrcounter.file.BytesParser;
+
+/**
+ * The IPv4 line parser implementations a counter can use for its processing threads.
+ * <p>
+ * {@link #VECTOR} needs the {@code jdk.incubator.vector} module at runtime ({@code --add-modules jdk.incubator.vector}).
+ * Its class is only loaded when a vector parser is created, so the other types work without the module.
+ */
+public enum Ip4ParserType implements Ip4ParserFactory {
+    /**
+     * One-byte-per-iteration state machine, see {@link AccumulatingCountIp4Parser}.
+     */
+    SCALAR {
+        @Override
+        public BytesParser create(IntSink sink, int batchSize) {
+            return new AccumulatingCountIp4Parser(sink, batchSize);
+        }
+    },
+    /**
+     * Vector API based parser, see {@link VectorIp4Parser}.
+     */
+    VECTOR {
+        @Override
+        public BytesParser create(IntSink sink, int batchSize) {
+            return new VectorIp4Parser(sink, batchSize);
+        }
+    };
+
+    @Override
+    public BytesParser create(IntSink sink) {
+        return create(sink, 0);
+    }
+
+    /**
+     * Creates a new parser that collects parsed IPs in a {@link UniqIntBatch} of the given size before passing
+     * them to the sink, or passes every IP directly if the size is 0.
+     */
+    public abstract BytesParser create(IntSink sink, int batchSize);
+
+    /**
+     * Returns a factory of parsers of this type that add IPs through a {@link UniqIntBatch} of the given size.
+     */
+    public Ip4ParserFactory batched(int batchSize) {
+        return sink -> create(sink, batchSize);
+    }
+}
@@ -0,0 +1,151 @@
+package eta.ipaddrcounter;
+
+import eta.ipaddrcounter.concurrency.UniqIntBatch;
+import eta.ipaddrcounter.concurrency.UniqIntThreadSafeCounter;
+import eta.ipaddrcounter.file.BytesParser;
+import eta.ipaddrcounter.file.FastByteBuffer;
+import eta.ipaddrcounter.file.FileSplitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.function.LongConsumer;
+
+/**
+ * LiveIPv4UniqCounter follows a growing log file like {@code tail -f} and keeps a running unique count.
+ * <p>
+ * Every {@link #poll()} parses the complete lines appended since the previous poll into a long-lived
+ * {@link UniqIntThreadSafeCounter}; a trailing line without a newline waits for the next poll. The running count
+ * is the live count of the counter ({@link UniqIntThreadSafeCounter#getUniqCountAsLong()}), so a poll costs only
+ * the new bytes, never a popcount of the 512 MB bitmap. {@link #run()} polls at a fixed interval and passes
+ * the count to a listener until the thread is interrupted or the counter is closed.
+ * <p>
+ * If the file becomes shorter than the bytes already read, it is taken to be rotated and followed from the start;
+ * the IPs counted before stay in the count.
+ */
+public class LiveIPv4UniqCounter implements Runnable, AutoCloseable {
+
+    private static final int DEF_BATCH_SIZE = 4096;
+
+    private final File file;
+    private final UniqIntThreadSafeCounter counter;
+    private final Duration interval;
+    private final LongConsumer countListener;
+    private final FastByteBuffer buffer;
+    private final BytesParser parser;
+    private long offset;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a LiveIPv4UniqCounter with the specified file, counter, interval and parser.
+     *
+     * @param file          the file to follow
+     * @param startOffset   the position of the first line to count, e.g. 0 or the current file length
+     * @param counter       the counter the IPs are added to, it may already hold IPs and is not closed
+     * @param interval      the time between two polls of {@link #run()}
+     * @param bufferSize    the size of the read buffer in bytes
+     * @param parserFactory the factory of the parser of the appended lines
+     * @param countListener receives the running unique count after every poll of {@link #run()}
+     */
+    public LiveIPv4UniqCounter(File file, long startOffset, UniqIntThreadSafeCounter counter, Duration interval,
+                               int bufferSize, Ip4ParserFactory parserFactory, LongConsumer countListener) {
+        if (file == null) throw new IllegalArgumentException("File must not be null");
+        if (startOffset < 0) throw new IllegalArgumentException("Start offset must not be negative");
+        if (counter == null) throw new IllegalArgumentException("Counter must not be null");
+        if (interval == null || interval.isNegative() || interval.isZero())
+            throw new IllegalArgumentException("Interval must be positive");
+        if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be greater than 0");
+        if (parserFactory == null) throw new IllegalArgumentException("Parser factory must not be null");
+        if (countListener == null) throw new IllegalArgumentException("Count listener must not be null");
+        this.file = file;
+        this.offset = startOffset;
+        this.counter = counter;
+        this.interval = interval;
+        this.countListener = countListener;
+        this.buffer = new FastByteBuffer(new byte[bufferSize]);
+        this.parser = parserFactory.create(new UniqIntBatch(counter, DEF_BATCH_SIZE));
+    }
+
+    /**
+     * Constructs a LiveIPv4UniqCounter that counts the file from the start into a new heap counter,
+     * with the scalar parser and a 1 MB buffer.
+     *
+     * @param file          the file to follow
+     * @param interval      the time between two polls of {@link #run()}
+     * @param countListener receives the running unique count after every poll of {@link #run()}
+     */
+    public LiveIPv4UniqCounter(File file, Duration interval, LongConsumer countListener) {
+        this(file, 0, new UniqIntThreadSafeCounter(), interval, 1024 * 1024, Ip4ParserType.SCALAR, countListener);
+    }
+
+    /**
+     * Parses the complete lines appended since the previous poll.
+     *
+     * @return the running unique count
+     */
+    public synchronized long poll() {
+        long length = file.length();
+        if (length < offset) {
+            offset = 0;
+        }
+        long end = FileSplitter.findLastNewlineEnd(file, offset, length);
+        if (end > offset) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.seek(offset);
+                while (offset < end) {
+                    int bytesRead = raf.read(buffer.array, 0, (int) Math.min(buffer.capacity, end - offset));
+                    if (bytesRead == -1) {
+                        break;
+                    }
+                    buffer.length = bytesRead;
+                    parser.parseBuffer(buffer);
+                    offset += bytesRead;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            parser.afterLastBuffer();
+        }
+        return counter.getUniqCountAsLong();
+    }
+
+    /**
+     * Returns the running unique count, including IPs added to the counter by others.
+     */
+    public long getUniqCountAsLong() {
+        return counter.getUniqCountAsLong();
+    }
+
+    /**
+     * Returns the position up to which the file has been counted.
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Polls at the configured interval, passing the count to the listener, until the thread is interrupted
+     * or the counter is closed.
+     */
+    @Override
+    public void run() {
+        while (!closed && !Thread.currentThread().isInterrupted()) {
+            countListener.accept(poll());
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops {@link #run()} after the current poll. The counter is not closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
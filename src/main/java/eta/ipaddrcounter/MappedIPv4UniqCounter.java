@@ -0,0 +1,130 @@
+package eta.ipaddrcounter;
+
+import eta.ipaddrcounter.concurrency.TasksUtil;
+import eta.ipaddrcounter.concurrency.UniqIntCounter;
+import eta.ipaddrcounter.concurrency.UniqIntCounterFactory;
+import eta.ipaddrcounter.concurrency.UniqIntCounterType;
+import eta.ipaddrcounter.file.BytesParser;
+import eta.ipaddrcounter.file.FileRegion;
+import eta.ipaddrcounter.file.FileSplitter;
+import eta.ipaddrcounter.file.InputFiles;
+import eta.ipaddrcounter.task.MappedFileChunkProcessor;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * MappedIPv4UniqCounter counts unique values without copying file bytes to the heap.
+ * The file is split into newline-aligned chunks, and each chunk is memory-mapped and parsed in place by its own thread.
+ * Chunks larger than the map window size (at most 2 GB, the limit of a single mapping) are mapped window by window.
+ * All settings (threads number, map window size and parse slice size) are provided via the constructor.
+ */
+public class MappedIPv4UniqCounter implements IPv4UniqCounter {
+
+    private static final long DEF_WINDOW_SIZE = 256 * 1024 * 1024;
+    private static final int DEF_SLICE_SIZE = 1024 * 1024;
+
+    private final int threadsNumber;
+    private final long windowSize;
+    private final int sliceSize;
+    private final Ip4ParserFactory parserFactory;
+    private final UniqIntCounterFactory counterFactory;
+
+    /**
+     * Constructs a MappedIPv4UniqCounter with the specified configuration.
+     *
+     * @param threadsNumber  the number of processing threads to use
+     * @param windowSize     the maximum number of bytes mapped at once by one thread (at most {@code Integer.MAX_VALUE})
+     * @param sliceSize      the number of mapped bytes parsed between interruption checks
+     * @param parserFactory  the factory of the parsers used by the processing threads
+     * @param counterFactory the factory of the counter shared by the processing threads
+     */
+    public MappedIPv4UniqCounter(int threadsNumber, long windowSize, int sliceSize, Ip4ParserFactory parserFactory,
+                                 UniqIntCounterFactory counterFactory) {
+        if (threadsNumber <= 0) throw new IllegalArgumentException("Threads number must be greater than 0");
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Window size must be in range (0, Integer.MAX_VALUE]");
+        if (sliceSize <= 0) throw new IllegalArgumentException("Slice size must be greater than 0");
+        if (parserFactory == null) throw new IllegalArgumentException("Parser factory must not be null");
+        if (counterFactory == null) throw new IllegalArgumentException("Counter factory must not be null");
+        this.threadsNumber = threadsNumber;
+        this.windowSize = windowSize;
+        this.sliceSize = sliceSize;
+        this.parserFactory = parserFactory;
+        this.counterFactory = counterFactory;
+    }
+
+    /**
+     * Constructs a MappedIPv4UniqCounter with the specified configuration and the heap counter.
+     *
+     * @param threadsNumber the number of processing threads to use
+     * @param windowSize    the maximum number of bytes mapped at once by one thread (at most {@code Integer.MAX_VALUE})
+     * @param sliceSize     the number of mapped bytes parsed between interruption checks
+     * @param parserFactory the factory of the parsers used by the processing threads
+     */
+    public MappedIPv4UniqCounter(int threadsNumber, long windowSize, int sliceSize, Ip4ParserFactory parserFactory) {
+        this(threadsNumber, windowSize, sliceSize, parserFactory, UniqIntCounterType.HEAP);
+    }
+
+    /**
+     * Constructs a MappedIPv4UniqCounter with the specified configuration and the scalar parser.
+     *
+     * @param threadsNumber the number of processing threads to use
+     * @param windowSize    the maximum number of bytes mapped at once by one thread (at most {@code Integer.MAX_VALUE})
+     * @param sliceSize     the number of mapped bytes parsed between interruption checks
+     */
+    public MappedIPv4UniqCounter(int threadsNumber, long windowSize, int sliceSize) {
+        this(threadsNumber, windowSize, sliceSize, Ip4ParserType.SCALAR);
+    }
+
+    /**
+     * Constructs a MappedIPv4UniqCounter with default settings:
+     * threads number = available processors, window size = 256 MB and slice size = 1 MB.
+     */
+    public MappedIPv4UniqCounter() {
+        this(Runtime.getRuntime().availableProcessors(), DEF_WINDOW_SIZE, DEF_SLICE_SIZE);
+    }
+
+    /**
+     * Constructs a MappedIPv4UniqCounter with default settings:
+     * window size = 256 MB and slice size = 1 MB.
+     */
+    public MappedIPv4UniqCounter(int threadsNumber) {
+        this(threadsNumber, DEF_WINDOW_SIZE, DEF_SLICE_SIZE);
+    }
+
+    /**
+     * Counts the unique values in the given files by splitting them into newline-aligned chunks
+     * and parsing the memory-mapped chunks of all files in parallel. Files smaller than a chunk are mapped whole.
+     *
+     * @param paths the paths to the input files or directories
+     * @return the total count of unique values found in all files
+     * @throws IllegalArgumentException if a file is not accessible or parameters are invalid
+     */
+    @Override
+    public long countUniqIPv4AtFilesAsLong(List<Path> paths) {
+        List<File> files = InputFiles.toUncompressedFiles(paths);
+        return countUniqAtFilesInternal(files);
+    }
+
+    private long countUniqAtFilesInternal(List<File> files) {
+        try (UniqIntCounter counter = counterFactory.create()) {
+            return countUniqAtFilesInternal(files, counter);
+        }
+    }
+
+    private long countUniqAtFilesInternal(List<File> files, UniqIntCounter counter) {
+        List<FileRegion> regions = FileSplitter.splitFilesOnNewLineAlignedChunks(threadsNumber, files, sliceSize);
+
+        List<MappedFileChunkProcessor> tasks = regions.stream().map(region -> {
+            BytesParser parser = parserFactory.create(counter);
+            return new MappedFileChunkProcessor(region.file(), region.start(), region.end(), parser,
+                    windowSize, sliceSize);
+        }).toList();
+
+        TasksUtil.executeAndWait(tasks, threadsNumber, "mapped-ipaddrcounter-");
+
+        return counter.getUniqCountAsLong();
+    }
+}
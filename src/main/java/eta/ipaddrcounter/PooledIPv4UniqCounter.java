@@ -0,0 +1,223 @@
+package eta.ipaddrcounter;
+
+import eta.ipaddrcounter.concurrency.BitmapStorage;
+import eta.ipaddrcounter.concurrency.HeapBitmapStorage;
+import eta.ipaddrcounter.concurrency.TasksUtil;
+import eta.ipaddrcounter.concurrency.UniqIntThreadSafeCounter;
+import eta.ipaddrcounter.file.FastByteBuffer;
+import eta.ipaddrcounter.file.FileRegion;
+import eta.ipaddrcounter.file.FileSplitter;
+import eta.ipaddrcounter.file.InputFiles;
+import eta.ipaddrcounter.task.WorkUnitsProcessor;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * PooledIPv4UniqCounter is a long-lived engine for counting many files one after another, or several at once.
+ * <p>
+ * It works like {@link SimpleIPv4UniqCounter}, but keeps everything a count allocates alive between calls:
+ * one fixed pool of warm threads, a read buffer per thread and up to {@code bitmapsNumber} bitmaps of
+ * {@link UniqIntThreadSafeCounter}. A call takes a free bitmap, or allocates one if fewer than {@code bitmapsNumber}
+ * exist, and waits otherwise. After the count the bitmap is zeroed in parallel on the pool
+ * ({@link UniqIntThreadSafeCounter#clearAsync}) and returned to the free bitmaps, so the result is returned
+ * without waiting for the clear. With two or more bitmaps the next call counts into another bitmap meanwhile.
+ * <p>
+ * The engine must be closed when it is no longer used, which stops the threads and frees the bitmaps.
+ * It must not be closed while a count is running.
+ */
+public class PooledIPv4UniqCounter implements IPv4UniqCounter, AutoCloseable {
+
+    private static final int DEF_UNITS_PER_THREAD = 16;
+
+    private final int threadsNumber;
+    private final int bufferSize;
+    private final int unitsPerThread;
+    private final int bitmapsNumber;
+    private final Ip4ParserFactory parserFactory;
+    private final Supplier<BitmapStorage> storageFactory;
+    private final ExecutorService executor;
+    private final ThreadLocal<FastByteBuffer> buffers;
+    // a caller may wait seconds for a bitmap, so the pool parks waiters instead of spinning like RingBufferQueue
+    private final BlockingQueue<UniqIntThreadSafeCounter> freeBitmaps;
+    private final List<UniqIntThreadSafeCounter> bitmaps = new ArrayList<>();
+
+    /**
+     * Constructs a PooledIPv4UniqCounter with the specified settings and starts its threads.
+     *
+     * @param threadsNumber  the number of processing threads to keep
+     * @param bufferSize     the size of the read buffer of each thread in bytes, also the minimal work unit size
+     * @param unitsPerThread the number of work units per thread a call's input is split into
+     * @param bitmapsNumber  the maximum number of bitmaps, and of calls that count at the same time
+     * @param parserFactory  the factory of the parsers used by the processing threads
+     * @param storageFactory the factory of the storage of a new bitmap, with {@link UniqIntThreadSafeCounter#ARRAY_SIZE}
+     *                       words, e.g. an {@link eta.ipaddrcounter.concurrency.OffHeapBitmapStorage}
+     */
+    public PooledIPv4UniqCounter(int threadsNumber, int bufferSize, int unitsPerThread, int bitmapsNumber,
+                                 Ip4ParserFactory parserFactory, Supplier<BitmapStorage> storageFactory) {
+        if (threadsNumber <= 0) throw new IllegalArgumentException("Threads number must be greater than 0");
+        if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be greater than 0");
+        if (unitsPerThread <= 0) throw new IllegalArgumentException("Units per thread must be greater than 0");
+        if (bitmapsNumber <= 0) throw new IllegalArgumentException("Bitmaps number must be greater than 0");
+        if (parserFactory == null) throw new IllegalArgumentException("Parser factory must not be null");
+        if (storageFactory == null) throw new IllegalArgumentException("Storage factory must not be null");
+        this.threadsNumber = threadsNumber;
+        this.bufferSize = bufferSize;
+        this.unitsPerThread = unitsPerThread;
+        this.bitmapsNumber = bitmapsNumber;
+        this.parserFactory = parserFactory;
+        this.storageFactory = storageFactory;
+        this.executor = Executors.newFixedThreadPool(threadsNumber,
+                TasksUtil.getThreadFactoryForExecutor("pooled-ipaddrcounter-"));
+        this.buffers = ThreadLocal.withInitial(() -> new FastByteBuffer(new byte[bufferSize]));
+        this.freeBitmaps = new ArrayBlockingQueue<>(bitmapsNumber);
+    }
+
+    /**
+     * Constructs a PooledIPv4UniqCounter with the specified number of threads, buffer size, bitmaps number
+     * and parser factory, 16 work units per thread and bitmaps on the Java heap.
+     *
+     * @param threadsNumber the number of processing threads to keep
+     * @param bufferSize    the size of the read buffer of each thread in bytes
+     * @param bitmapsNumber the maximum number of bitmaps, and of calls that count at the same time
+     * @param parserFactory the factory of the parsers used by the processing threads
+     */
+    public PooledIPv4UniqCounter(int threadsNumber, int bufferSize, int bitmapsNumber, Ip4ParserFactory parserFactory) {
+        this(threadsNumber, bufferSize, DEF_UNITS_PER_THREAD, bitmapsNumber, parserFactory,
+                () -> new HeapBitmapStorage(UniqIntThreadSafeCounter.ARRAY_SIZE));
+    }
+
+    /**
+     * Constructs a PooledIPv4UniqCounter with default settings:
+     * threads number = available processors, buffer size = 1 MB, one bitmap on the Java heap and the scalar parser.
+     */
+    public PooledIPv4UniqCounter() {
+        this(Runtime.getRuntime().availableProcessors(), 1024 * 1024, 1, Ip4ParserType.SCALAR);
+    }
+
+    /**
+     * Counts the unique values in the given files with the threads and a bitmap of the pool.
+     *
+     * @param paths the paths to the input files or directories
+     * @return the total count of unique values found in all files
+     * @throws IllegalArgumentException if a file is not accessible or parameters are invalid
+     */
+    @Override
+    public long countUniqIPv4AtFilesAsLong(List<Path> paths) {
+        List<File> files = InputFiles.toUncompressedFiles(paths);
+        List<FileRegion> units = FileSplitter.splitFilesOnNewLineAlignedChunks(threadsNumber * unitsPerThread,
+                files, bufferSize);
+        UniqIntThreadSafeCounter counter = takeBitmap();
+        try {
+            countUniqAtUnits(units, counter);
+            return counter.getUniqCountAsLong();
+        } finally {
+            releaseBitmap(counter);
+        }
+    }
+
+    /**
+     * Stops the threads and frees the bitmaps.
+     */
+    @Override
+    public void close() {
+        // waits for the clears that are still running
+        executor.close();
+        synchronized (bitmaps) {
+            for (UniqIntThreadSafeCounter bitmap : bitmaps) {
+                bitmap.close();
+            }
+            bitmaps.clear();
+        }
+    }
+
+    private void countUniqAtUnits(List<FileRegion> units, UniqIntThreadSafeCounter counter) {
+        AtomicInteger nextUnit = new AtomicInteger();
+        int workersNumber = Math.min(threadsNumber, units.size());
+        List<Future<?>> futures = new ArrayList<>(workersNumber);
+        for (int i = 0; i < workersNumber; i++) {
+            futures.add(executor.submit(() -> {
+                try {
+                    new WorkUnitsProcessor(units, nextUnit, parserFactory.create(counter), buffers.get()).run();
+                } catch (RuntimeException | Error e) {
+                    // the pool is shared, so instead of interrupting it the other workers are given no more units
+                    nextUnit.set(units.size());
+                    throw e;
+                }
+            }));
+        }
+        waitForAll(futures, nextUnit, units.size());
+    }
+
+    /**
+     * Waits until every worker has finished, so that no worker touches the bitmap after it is released.
+     */
+    private static void waitForAll(List<Future<?>> futures, AtomicInteger nextUnit, int unitsNumber) {
+        RuntimeException failure = null;
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new RuntimeException("Task failed", e.getCause());
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    nextUnit.set(unitsNumber);
+                    if (failure == null) {
+                        failure = new RuntimeException("Task interrupted", e);
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private UniqIntThreadSafeCounter takeBitmap() {
+        UniqIntThreadSafeCounter bitmap = freeBitmaps.poll();
+        if (bitmap != null) {
+            return bitmap;
+        }
+        synchronized (bitmaps) {
+            if (bitmaps.size() < bitmapsNumber) {
+                bitmap = new UniqIntThreadSafeCounter(storageFactory.get());
+                bitmaps.add(bitmap);
+                return bitmap;
+            }
+        }
+        try {
+            return freeBitmaps.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a free bitmap", e);
+        }
+    }
+
+    private void releaseBitmap(UniqIntThreadSafeCounter bitmap) {
+        try {
+            bitmap.clearAsync(executor, threadsNumber).thenRun(() -> freeBitmaps.offer(bitmap));
+        } catch (RejectedExecutionException e) {
+            // the engine is closing and frees the bitmap
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package eta.ipaddrcounter;
+
+import eta.ipaddrcounter.concurrency.TasksUtil;
+import eta.ipaddrcounter.concurrency.UniqIntBitmap;
+import eta.ipaddrcounter.file.BytesParser;
+import eta.ipaddrcounter.file.FileRegion;
+import eta.ipaddrcounter.file.FileSplitter;
+import eta.ipaddrcounter.file.InputFiles;
+import eta.ipaddrcounter.task.FileChunkProcessor;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * PrivateBitmapsIPv4UniqCounter splits the files into newline-aligned chunks like {@link SimpleIPv4UniqCounter},
+ * but each processing thread adds IPs to its own non-atomic {@link UniqIntBitmap}, so there are no atomics on the hot path.
+ * At the end the bitmaps are merged with a parallel word-wise OR and popcount.
+ * <p>
+ * Every thread needs its own 512 MB bitmap. If the free heap cannot hold one bitmap per thread,
+ * the count falls back to {@link SimpleIPv4UniqCounter} with the shared thread-safe counter.
+ * All settings (threads number, buffer size and parser factory) are provided via the constructor.
+ */
+public class PrivateBitmapsIPv4UniqCounter implements IPv4UniqCounter {
+
+    private static final long HEAP_RESERVE = 64 * 1024 * 1024;
+
+    private final int threadsNumber;
+    private final int bufferSize;
+    private final Ip4ParserFactory parserFactory;
+    private final LongSupplier availableMemory;
+
+    /**
+     * Constructs a PrivateBitmapsIPv4UniqCounter with the specified number of threads, buffer size and parser factory.
+     *
+     * @param threadsNumber the number of processing threads to use, one bitmap per thread
+     * @param bufferSize    the size of each buffer in bytes
+     * @param parserFactory the factory of the parsers used by the processing threads
+     */
+    public PrivateBitmapsIPv4UniqCounter(int threadsNumber, int bufferSize, Ip4ParserFactory parserFactory) {
+        this(threadsNumber, bufferSize, parserFactory, PrivateBitmapsIPv4UniqCounter::freeHeap);
+    }
+
+    /**
+     * @param availableMemory returns the number of bytes the bitmaps and read buffers may take, the free heap
+     *                        by default; lets tests choose between the private bitmaps and the fallback
+     */
+    PrivateBitmapsIPv4UniqCounter(int threadsNumber, int bufferSize, Ip4ParserFactory parserFactory,
+                                  LongSupplier availableMemory) {
+        if (threadsNumber <= 0) throw new IllegalArgumentException("Threads number must be greater than 0");
+        if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be greater than 0");
+        if (parserFactory == null) throw new IllegalArgumentException("Parser factory must not be null");
+        this.threadsNumber = threadsNumber;
+        this.bufferSize = bufferSize;
+        this.parserFactory = parserFactory;
+        this.availableMemory = availableMemory;
+    }
+
+    /**
+     * Constructs a PrivateBitmapsIPv4UniqCounter with default settings:
+     * threads number = available processors, buffer size = 1 MB and the scalar parser.
+     */
+    public PrivateBitmapsIPv4UniqCounter() {
+        this(Runtime.getRuntime().availableProcessors(), 1024 * 1024, Ip4ParserType.SCALAR);
+    }
+
+    /**
+     * Counts the unique values in the given files using one private bitmap per thread,
+     * or the shared counter of {@link SimpleIPv4UniqCounter} if the bitmaps do not fit into the heap.
+     *
+     * @param paths the paths to the input files or directories
+     * @return the total count of unique values found in all files
+     * @throws IllegalArgumentException if a file is not accessible or parameters are invalid
+     */
+    @Override
+    public long countUniqIPv4AtFilesAsLong(List<Path> paths) {
+        List<File> files = InputFiles.toUncompressedFiles(paths);
+
+        List<FileRegion> regions = FileSplitter.splitFilesOnNewLineAlignedChunks(threadsNumber, files, bufferSize);
+        if (regions.isEmpty()) {
+            return 0;
+        }
+        if (!fitsIntoMemory(Math.min(regions.size(), threadsNumber))) {
+            return new SimpleIPv4UniqCounter(threadsNumber, bufferSize, parserFactory).countUniqIPv4AtFilesAsLong(paths);
+        }
+        return countUniqAtFilesInternal(regions);
+    }
+
+    /**
+     * Checks whether the given number of private bitmaps plus the read buffers fit into the available memory.
+     */
+    boolean fitsIntoMemory(int bitmapsNumber) {
+        long requiredMemory = bitmapsNumber * (UniqIntBitmap.SIZE_BYTES + bufferSize) + HEAP_RESERVE;
+        return requiredMemory <= availableMemory.getAsLong();
+    }
+
+    private static long freeHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+        return runtime.maxMemory() - usedHeap;
+    }
+
+    private long countUniqAtFilesInternal(List<FileRegion> regions) {
+        // there can be more regions than threads when several files are read, so bitmaps belong to threads, not regions
+        List<UniqIntBitmap> bitmaps = new CopyOnWriteArrayList<>();
+        ThreadLocal<UniqIntBitmap> threadBitmap = ThreadLocal.withInitial(() -> {
+            UniqIntBitmap bitmap = new UniqIntBitmap();
+            bitmaps.add(bitmap);
+            return bitmap;
+        });
+        List<Runnable> tasks = new ArrayList<>(regions.size());
+        for (FileRegion region : regions) {
+            tasks.add(() -> {
+                BytesParser parser = parserFactory.create(threadBitmap.get());
+                new FileChunkProcessor(region.file(), region.start(), region.end(), parser, bufferSize).run();
+            });
+        }
+
+        TasksUtil.executeAndWait(tasks, threadsNumber, "private-ipaddrcounter-");
+
+        return UniqIntBitmap.mergeAndCount(bitmaps, threadsNumber);
+    }
+}
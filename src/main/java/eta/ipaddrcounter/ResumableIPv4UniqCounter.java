@@ -0,0 +1,194 @@
+package eta.ipaddrcounter;
+
+import eta.ipaddrcounter.concurrency.MappedBitmapStorage;
+import eta.ipaddrcounter.concurrency.UniqIntThreadSafeCounter;
+import eta.ipaddrcounter.file.FileRegion;
+import eta.ipaddrcounter.file.FileSplitter;
+import eta.ipaddrcounter.file.InputFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * ResumableIPv4UniqCounter counts append-only files incrementally, keeping its state in a checkpoint directory.
+ * <p>
+ * The directory holds the bitmap of {@link UniqIntThreadSafeCounter} as a memory-mapped file ({@value #BITMAP_FILE},
+ * see {@link MappedBitmapStorage}) and, for every input file, the number of bytes already counted
+ * ({@value #OFFSETS_FILE}). A run maps the saved bitmap and only parses the bytes past the recorded offsets,
+ * with the work units of {@link SimpleIPv4UniqCounter}. The count returned is the number of unique values
+ * in everything counted into the directory so far, by this run and the previous ones.
+ * <p>
+ * Only complete lines are counted: a trailing line without a newline is left for the next run, when it may have
+ * been completed. A file that is shorter than its recorded offset is taken to be rotated and counted from the start.
+ * <p>
+ * The new bytes are counted in rounds of about {@code checkpointBytes}. After each round the bitmap is written
+ * back, then the offsets are synced to disk and replaced atomically, so a crash loses at most one round.
+ * Adding a value twice has no effect, so a bitmap that is ahead of its offsets after a crash is still correct
+ * to resume from.
+ * Only one run may use a checkpoint directory at a time.
+ */
+public class ResumableIPv4UniqCounter implements IPv4UniqCounter {
+
+    public static final String BITMAP_FILE = "bitmap.bin";
+    public static final String OFFSETS_FILE = "offsets.properties";
+    private static final long DEF_CHECKPOINT_BYTES = 4L * 1024 * 1024 * 1024;
+
+    private final Path checkpointDir;
+    private final long checkpointBytes;
+    private final SimpleIPv4UniqCounter engine;
+
+    /**
+     * Constructs a ResumableIPv4UniqCounter with the specified checkpoint directory, round size and engine settings.
+     *
+     * @param checkpointDir   the directory of the bitmap and offsets, created if it does not exist
+     * @param checkpointBytes the number of new bytes counted between two checkpoints
+     * @param threadsNumber   the number of processing threads to use
+     * @param bufferSize      the size of each buffer in bytes
+     * @param parserFactory   the factory of the parsers used by the processing threads
+     */
+    public ResumableIPv4UniqCounter(Path checkpointDir, long checkpointBytes, int threadsNumber, int bufferSize,
+                                    Ip4ParserFactory parserFactory) {
+        if (checkpointDir == null) throw new IllegalArgumentException("Checkpoint directory must not be null");
+        if (checkpointBytes <= 0) throw new IllegalArgumentException("Checkpoint bytes must be greater than 0");
+        this.checkpointDir = checkpointDir;
+        this.checkpointBytes = checkpointBytes;
+        // the counter is created from the checkpoint, the engine's own counter factory is never used
+        this.engine = new SimpleIPv4UniqCounter(threadsNumber, bufferSize, parserFactory);
+    }
+
+    /**
+     * Constructs a ResumableIPv4UniqCounter with default settings:
+     * checkpoint every 4 GB, threads number = available processors, buffer size = 1 MB and the scalar parser.
+     *
+     * @param checkpointDir the directory of the bitmap and offsets, created if it does not exist
+     */
+    public ResumableIPv4UniqCounter(Path checkpointDir) {
+        this(checkpointDir, DEF_CHECKPOINT_BYTES, Runtime.getRuntime().availableProcessors(), 1024 * 1024,
+                Ip4ParserType.SCALAR);
+    }
+
+    /**
+     * Counts the lines of the given files that were not counted into the checkpoint yet.
+     *
+     * @param paths the paths to the input files or directories
+     * @return the count of unique values in everything counted into the checkpoint directory so far
+     * @throws IllegalArgumentException if a file is not accessible or the checkpoint bitmap has a wrong size
+     */
+    @Override
+    public long countUniqIPv4AtFilesAsLong(List<Path> paths) {
+        List<File> files = InputFiles.toUncompressedFiles(paths);
+        try {
+            Files.createDirectories(checkpointDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Properties offsets = loadOffsets();
+        MappedBitmapStorage storage = new MappedBitmapStorage(checkpointDir.resolve(BITMAP_FILE),
+                UniqIntThreadSafeCounter.ARRAY_SIZE);
+        try (UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter(storage)) {
+            List<FileRegion> pending = getPendingRegions(files, offsets);
+            int next = 0;
+            while (next < pending.size()) {
+                List<FileRegion> round = new ArrayList<>();
+                long budget = checkpointBytes;
+                while (next < pending.size() && budget > 0) {
+                    FileRegion region = pending.get(next);
+                    long size = region.end() - region.start();
+                    if (size > budget) {
+                        long cut = FileSplitter.findLastNewlineEnd(region.file(), region.start(),
+                                region.start() + budget);
+                        if (cut > region.start()) {
+                            round.add(new FileRegion(region.file(), region.start(), cut));
+                            pending.set(next, new FileRegion(region.file(), cut, region.end()));
+                            break;
+                        }
+                    }
+                    round.add(region);
+                    budget -= size;
+                    next++;
+                }
+
+                engine.countUniqIPv4AtRegionsAsLong(round, counter);
+                for (FileRegion region : round) {
+                    offsets.setProperty(getKey(region.file()), Long.toString(region.end()));
+                }
+                // the bitmap must be on disk before the offsets that claim it
+                storage.force();
+                saveOffsets(offsets);
+            }
+            return counter.getUniqCountAsLong();
+        }
+    }
+
+    private static List<FileRegion> getPendingRegions(List<File> files, Properties offsets) {
+        List<FileRegion> pending = new ArrayList<>();
+        for (File file : files) {
+            long length = file.length();
+            long offset = Long.parseLong(offsets.getProperty(getKey(file), "0"));
+            if (offset > length) {
+                offset = 0;
+            }
+            long end = FileSplitter.findLastNewlineEnd(file, offset, length);
+            if (end > offset) {
+                pending.add(new FileRegion(file, offset, end));
+            }
+        }
+        return pending;
+    }
+
+    private static String getKey(File file) {
+        return file.toPath().toAbsolutePath().normalize().toString();
+    }
+
+    private Properties loadOffsets() {
+        Properties offsets = new Properties();
+        Path offsetsFile = checkpointDir.resolve(OFFSETS_FILE);
+        if (Files.exists(offsetsFile)) {
+            try (InputStream in = Files.newInputStream(offsetsFile)) {
+                offsets.load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return offsets;
+    }
+
+    private void saveOffsets(Properties offsets) {
+        Path offsetsFile = checkpointDir.resolve(OFFSETS_FILE);
+        Path tempFile = checkpointDir.resolve(OFFSETS_FILE + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                offsets.store(Channels.newOutputStream(channel), "bytes counted per input file");
+                // without this the rename can reach the disk before the content, leaving an empty offsets file
+                channel.force(true);
+            }
+            Files.move(tempFile, offsetsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(checkpointDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Makes the rename durable. Not every platform can open a directory, there the rename is left to the OS.
+     */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // e.g. Windows, where directories cannot be opened as channels
+        }
+    }
+}
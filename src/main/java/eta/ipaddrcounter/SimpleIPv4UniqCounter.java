@@ -1,37 +1,119 @@
 package eta.ipaddrcounter;
 
+import eta.ipaddrcounter.concurrency.EarlyStop;
 import eta.ipaddrcounter.concurrency.TasksUtil;
+import eta.ipaddrcounter.concurrency.UniqIntCounter;
+import eta.ipaddrcounter.concurrency.UniqIntCounterFactory;
+import eta.ipaddrcounter.concurrency.UniqIntCounterType;
 import eta.ipaddrcounter.concurrency.UniqIntThreadSafeCounter;
 import eta.ipaddrcounter.file.BytesParser;
-import eta.ipaddrcounter.file.FileChunk;
-import eta.ipaddrcounter.task.FileChunkProcessor;
+import eta.ipaddrcounter.file.FileRegion;
+import eta.ipaddrcounter.task.WorkUnitsProcessor;
 import eta.ipaddrcounter.file.FileSplitter;
+import eta.ipaddrcounter.file.InputFiles;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SimpleIPv4UniqCounter implements a simple, single-stage approach for counting unique values in a file.
- * In this implementation, the file is split into newline-aligned chunks and processed in parallel using a single thread pool.
- * All settings (threads number and buffer size) are provided via the constructor.
+ * In this implementation, the file is split into many small newline-aligned work units that the threads
+ * of a single pool take one by one, so threads that finish early keep working instead of waiting for a slow one.
+ * All settings (threads number, buffer size and units per thread) are provided via the constructor.
  */
 public class SimpleIPv4UniqCounter implements IPv4UniqCounter {
 
+    private static final int DEF_UNITS_PER_THREAD = 16;
+
     private final int threadsNumber;
     private final int bufferSize;
+    private final int unitsPerThread;
+    private final boolean directIo;
+    private final Ip4ParserFactory parserFactory;
+    private final UniqIntCounterFactory counterFactory;
 
     /**
-     * Constructs a SimpleIPv4UniqCounter with the specified number of threads and buffer size.
+     * Constructs a SimpleIPv4UniqCounter with the specified number of threads, buffer size, work units per thread,
+     * parser factory and counter factory.
      *
-     * @param threadsNumber the number of processing threads to use
-     * @param bufferSize    the size of each buffer in bytes
+     * @param threadsNumber  the number of processing threads to use
+     * @param bufferSize     the size of each buffer in bytes, also the minimal work unit size
+     * @param unitsPerThread the number of work units per thread the input is split into, 1 for one chunk per thread
+     * @param parserFactory  the factory of the parsers used by the processing threads
+     * @param counterFactory the factory of the counter shared by the processing threads
      */
-    public SimpleIPv4UniqCounter(int threadsNumber, int bufferSize) {
+    public SimpleIPv4UniqCounter(int threadsNumber, int bufferSize, int unitsPerThread, Ip4ParserFactory parserFactory,
+                                 UniqIntCounterFactory counterFactory) {
+        this(threadsNumber, bufferSize, unitsPerThread, false, parserFactory, counterFactory);
+    }
+
+    /**
+     * Constructs a SimpleIPv4UniqCounter with the specified number of threads, buffer size, work units per thread,
+     * read mode, parser factory and counter factory.
+     * <p>
+     * With direct I/O the files are read bypassing the page cache into block-aligned native buffers that are parsed
+     * in place, see {@link eta.ipaddrcounter.file.DirectIo}. This helps for inputs much larger than the RAM that are
+     * read once; a file that is already cached is read faster through the page cache.
+     *
+     * @param threadsNumber  the number of processing threads to use
+     * @param bufferSize     the size of each buffer in bytes, also the minimal work unit size
+     * @param unitsPerThread the number of work units per thread the input is split into, 1 for one chunk per thread
+     * @param directIo       whether the files are read with direct I/O ({@code O_DIRECT})
+     * @param parserFactory  the factory of the parsers used by the processing threads
+     * @param counterFactory the factory of the counter shared by the processing threads
+     */
+    public SimpleIPv4UniqCounter(int threadsNumber, int bufferSize, int unitsPerThread, boolean directIo,
+                                 Ip4ParserFactory parserFactory, UniqIntCounterFactory counterFactory) {
         if (threadsNumber <= 0) throw new IllegalArgumentException("Threads number must be greater than 0");
         if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be greater than 0");
+        if (unitsPerThread <= 0) throw new IllegalArgumentException("Units per thread must be greater than 0");
+        if (parserFactory == null) throw new IllegalArgumentException("Parser factory must not be null");
+        if (counterFactory == null) throw new IllegalArgumentException("Counter factory must not be null");
         this.threadsNumber = threadsNumber;
         this.bufferSize = bufferSize;
+        this.unitsPerThread = unitsPerThread;
+        this.directIo = directIo;
+        this.parserFactory = parserFactory;
+        this.counterFactory = counterFactory;
+    }
+
+    /**
+     * Constructs a SimpleIPv4UniqCounter with the specified number of threads, buffer size,
+     * parser factory and counter factory, and 16 work units per thread.
+     *
+     * @param threadsNumber  the number of processing threads to use
+     * @param bufferSize     the size of each buffer in bytes
+     * @param parserFactory  the factory of the parsers used by the processing threads
+     * @param counterFactory the factory of the counter shared by the processing threads
+     */
+    public SimpleIPv4UniqCounter(int threadsNumber, int bufferSize, Ip4ParserFactory parserFactory,
+                                 UniqIntCounterFactory counterFactory) {
+        this(threadsNumber, bufferSize, DEF_UNITS_PER_THREAD, parserFactory, counterFactory);
+    }
+
+    /**
+     * Constructs a SimpleIPv4UniqCounter with the specified number of threads, buffer size, parser factory
+     * and the heap counter.
+     *
+     * @param threadsNumber the number of processing threads to use
+     * @param bufferSize    the size of each buffer in bytes
+     * @param parserFactory the factory of the parsers used by the processing threads
+     */
+    public SimpleIPv4UniqCounter(int threadsNumber, int bufferSize, Ip4ParserFactory parserFactory) {
+        this(threadsNumber, bufferSize, parserFactory, UniqIntCounterType.HEAP);
+    }
+
+    /**
+     * Constructs a SimpleIPv4UniqCounter with the specified number of threads and buffer size.
+     *
+     * @param threadsNumber the number of processing threads to use
+     * @param bufferSize    the size of each buffer in bytes
+     */
+    public SimpleIPv4UniqCounter(int threadsNumber, int bufferSize) {
+        this(threadsNumber, bufferSize, Ip4ParserType.SCALAR);
     }
 
     /**
@@ -51,43 +133,97 @@ public class SimpleIPv4UniqCounter implements IPv4UniqCounter {
     }
 
     /**
-     * Counts the unique values in the given file by splitting it into newline-aligned chunks
-     * and processing them in parallel using the configured settings.
+     * Counts the unique values in the given files by splitting them into newline-aligned chunks
+     * and processing the chunks of all files in parallel using the configured settings.
+     * Files smaller than a chunk are processed whole.
      *
-     * @param path the path to the input file
-     * @return the total count of unique values found in the file
-     * @throws IllegalArgumentException if the file is not accessible or parameters are invalid
+     * @param paths the paths to the input files or directories
+     * @return the total count of unique values found in all files
+     * @throws IllegalArgumentException if a file is not accessible or parameters are invalid
      */
     @Override
-    public int countUniqIPv4AtFile(Path path) {
-        if (path == null) throw new NullPointerException("Path must not be null");
-
-        File file = path.toFile();
-        if (!file.exists())
-            throw new IllegalArgumentException("File does not exist: " + file.getAbsolutePath());
-        if (!file.isFile())
-            throw new IllegalArgumentException("Not a valid file: " + file.getAbsolutePath());
-        if (!file.canRead())
-            throw new IllegalArgumentException("File is not readable: " + file.getAbsolutePath());
-
-        return countUniqAtFileInternal(file);
+    public long countUniqIPv4AtFilesAsLong(List<Path> paths) {
+        List<File> files = InputFiles.toUncompressedFiles(paths);
+        return countUniqAtFilesInternal(files);
     }
 
-    private int countUniqAtFileInternal(File file) {
-        UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter();
+    /**
+     * Returns whether the given files contain at least {@code n} unique values. With a bitmap counter
+     * ({@link UniqIntThreadSafeCounter}) every thread checks the live count after each buffer and the first one
+     * to see it reach {@code n} interrupts all threads, so the rest of the input is not read. Other counters
+     * cannot be read while threads add to them, so the files are counted in full.
+     *
+     * @param paths the paths to the input files or directories
+     * @param n     the threshold, not negative
+     * @return true if the number of unique values is at least {@code n}
+     * @throws IllegalArgumentException if a file is not accessible or parameters are invalid
+     */
+    @Override
+    public boolean hasAtLeastNUniq(List<Path> paths, long n) {
+        if (n < 0) throw new IllegalArgumentException("Threshold must not be negative");
+        List<File> files = InputFiles.toUncompressedFiles(paths);
+        if (n == 0) {
+            return true;
+        }
+        try (UniqIntCounter counter = counterFactory.create()) {
+            if (!(counter instanceof UniqIntThreadSafeCounter liveCounter)) {
+                return countUniqAtFilesInternal(files, counter) >= n;
+            }
+            List<FileRegion> units = FileSplitter.splitFilesOnNewLineAlignedChunks(threadsNumber * unitsPerThread,
+                    files, bufferSize);
+            EarlyStop stop = new EarlyStop();
+            countUniqAtUnits(units, counter,
+                    sink -> new ThresholdParser(parserFactory.create(sink), liveCounter, n, stop), stop);
+            return liveCounter.getUniqCountAsLong() >= n;
+        }
+    }
 
-        List<FileChunk> chunks = FileSplitter.splitOnNewLineAlignedChunks(threadsNumber, file, bufferSize);
-        if (chunks.isEmpty()) {
-            throw new IllegalStateException("No file chunks created");
+    private long countUniqAtFilesInternal(List<File> files) {
+        try (UniqIntCounter counter = counterFactory.create()) {
+            return countUniqAtFilesInternal(files, counter);
         }
+    }
+
+    private long countUniqAtFilesInternal(List<File> files, UniqIntCounter counter) {
+        List<FileRegion> units = FileSplitter.splitFilesOnNewLineAlignedChunks(threadsNumber * unitsPerThread,
+                files, bufferSize);
+        return countUniqAtUnits(units, counter);
+    }
+
+    /**
+     * Adds the values of the given file regions to the given counter, e.g. to continue a count over new data.
+     * The regions must start at a line start and end at a line end or the end of the file; they are split into
+     * work units like whole files. The counter is not closed.
+     *
+     * @param regions the newline-aligned regions to count
+     * @param counter the counter to add the values to
+     * @return the count of unique values in the counter afterwards
+     */
+    public long countUniqIPv4AtRegionsAsLong(List<FileRegion> regions, UniqIntCounter counter) {
+        if (regions == null) throw new IllegalArgumentException("Regions must not be null");
+        if (counter == null) throw new IllegalArgumentException("Counter must not be null");
+        List<FileRegion> units = FileSplitter.splitRegionsOnNewLineAlignedChunks(threadsNumber * unitsPerThread,
+                regions, bufferSize);
+        return countUniqAtUnits(units, counter);
+    }
+
+    private long countUniqAtUnits(List<FileRegion> units, UniqIntCounter counter) {
+        return countUniqAtUnits(units, counter, parserFactory, new EarlyStop());
+    }
+
+    private long countUniqAtUnits(List<FileRegion> units, UniqIntCounter counter, Ip4ParserFactory parserFactory,
+                                  EarlyStop stop) {
+        AtomicInteger nextUnit = new AtomicInteger();
 
-        List<FileChunkProcessor> tasks = chunks.stream().map(chunk -> {
-            BytesParser parser = new AccumulatingCountIp4Parser(counter);
-            return new FileChunkProcessor(file, chunk.start(), chunk.end(), parser, bufferSize);
-        }).toList();
+        int workersNumber = Math.min(threadsNumber, units.size());
+        List<WorkUnitsProcessor> workers = new ArrayList<>(workersNumber);
+        for (int i = 0; i < workersNumber; i++) {
+            BytesParser parser = parserFactory.create(counter);
+            workers.add(new WorkUnitsProcessor(units, nextUnit, parser, bufferSize, directIo));
+        }
 
-        TasksUtil.executeAndWait(tasks, threadsNumber, "ipaddrcounter-");
+        TasksUtil.executeAndWait(workers, Math.max(workersNumber, 1), "ipaddrcounter-", stop);
 
-        return counter.getUniqCount();
+        return counter.getUniqCountAsLong();
     }
 }
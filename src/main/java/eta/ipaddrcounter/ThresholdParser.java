@@ -0,0 +1,49 @@
+package eta.ipaddrcounter;
+
+import eta.ipaddrcounter.concurrency.EarlyStop;
+import eta.ipaddrcounter.concurrency.UniqIntThreadSafeCounter;
+import eta.ipaddrcounter.file.BytesParser;
+import eta.ipaddrcounter.file.FastByteBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wraps the parser of a processing thread and stops the run once the live count of the counter reaches
+ * the threshold. The count is checked after every buffer, so the run stops within one buffer per thread.
+ */
+final class ThresholdParser implements BytesParser {
+    private final BytesParser parser;
+    private final UniqIntThreadSafeCounter counter;
+    private final long threshold;
+    private final EarlyStop stop;
+
+    ThresholdParser(BytesParser parser, UniqIntThreadSafeCounter counter, long threshold, EarlyStop stop) {
+        this.parser = parser;
+        this.counter = counter;
+        this.threshold = threshold;
+        this.stop = stop;
+    }
+
+    @Override
+    public void parseBuffer(FastByteBuffer fastBuf) {
+        parser.parseBuffer(fastBuf);
+        checkThreshold();
+    }
+
+    @Override
+    public void parseByteBuffer(ByteBuffer buf) {
+        parser.parseByteBuffer(buf);
+        checkThreshold();
+    }
+
+    @Override
+    public void afterLastBuffer() {
+        parser.afterLastBuffer();
+    }
+
+    private void checkThreshold() {
+        if (!stop.isStopped() && counter.getUniqCountAsLong() >= threshold) {
+            stop.stop();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package eta.ipaddrcounter;
+
+import eta.ipaddrcounter.concurrency.IntSink;
+import eta.ipaddrcounter.concurrency.UniqIntBatch;
+import eta.ipaddrcounter.file.BytesParser;
+import eta.ipaddrcounter.file.FastByteBuffer;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BytesParser} that uses the Vector API to classify many bytes at a time.
+ * <p>
+ * The first pass compares whole vectors against '\n', '.' and the digit range and records the positions
+ * of newlines, dots and any other bytes. The second pass walks complete lines using those positions:
+ * a line with exactly three dots, no other bytes and digit groups of 1-3 digits is converted group by group
+ * without a per-byte state machine. Every other line, and the partial lines at the buffer edges, are passed to
+ * an {@link AccumulatingCountIp4Parser} that keeps the state between buffers, so both parsers produce exactly
+ * the same IPs, including IPs that span buffers.
+ * <p>
+ * Buffers without a backing array (e.g. memory-mapped ones) are copied to a small scratch array piece by piece.
+ * Requires {@code --add-modules jdk.incubator.vector}.
+ */
+public class VectorIp4Parser implements BytesParser {
+    // the lane masks are read with VectorMask.toLong(), which supports at most 64 lanes (e.g. not SVE above 512 bits)
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() > Long.SIZE
+            ? ByteVector.SPECIES_512 : ByteVector.SPECIES_PREFERRED;
+    private static final int SEGMENT_SIZE = 8 * 1024;
+    private static final int SCRATCH_SIZE = 64 * 1024;
+
+    private final IntSink sink;
+    // parses the lines the vector pass leaves out, and holds the unfinished IP between buffers
+    private final AccumulatingCountIp4Parser scalar;
+
+    private final int[] newlines = new int[SEGMENT_SIZE];
+    private final int[] dots = new int[SEGMENT_SIZE];
+    private final int[] others = new int[SEGMENT_SIZE];
+    private int newlinesCount;
+    private int dotsCount;
+    private int othersCount;
+    private byte[] scratch;
+
+    public VectorIp4Parser(IntSink sink) {
+        this(sink, 0);
+    }
+
+    /**
+     * @param sink      the sink parsed IPs are passed to, e.g. a counter
+     * @param batchSize the size of the {@link UniqIntBatch} IPs are collected in before they are passed on,
+     *                  or 0 to pass every IP directly
+     */
+    public VectorIp4Parser(IntSink sink, int batchSize) {
+        this.sink = batchSize > 0 ? new UniqIntBatch(sink, batchSize) : sink;
+        this.scalar = new AccumulatingCountIp4Parser(this.sink);
+    }
+
+    @Override
+    public void parseBuffer(FastByteBuffer fastBuf) {
+        parseArray(fastBuf.array, 0, fastBuf.length);
+    }
+
+    @Override
+    public void parseByteBuffer(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            int from = buf.arrayOffset() + buf.position();
+            parseArray(buf.array(), from, from + buf.remaining());
+            return;
+        }
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+        int end = buf.limit();
+        for (int pos = buf.position(); pos < end; pos += SCRATCH_SIZE) {
+            int length = Math.min(SCRATCH_SIZE, end - pos);
+            buf.get(pos, scratch, 0, length);
+            parseArray(scratch, 0, length);
+        }
+    }
+
+    @Override
+    public void afterLastBuffer() {
+        scalar.afterLastBuffer();
+    }
+
+    private void parseArray(byte[] array, int from, int to) {
+        for (int pos = from; pos < to; pos += SEGMENT_SIZE) {
+            parseSegment(array, pos, Math.min(pos + SEGMENT_SIZE, to));
+        }
+    }
+
+    /**
+     * Parses [from, to) in the same way as a whole buffer; segments keep the position arrays small and cache-resident.
+     */
+    private void parseSegment(byte[] array, int from, int to) {
+        classify(array, from, to);
+        if (newlinesCount == 0) {
+            scalar.parseArray(array, from, to);
+            return;
+        }
+
+        // the first line continues the state of the previous segment
+        scalar.parseArray(array, from, newlines[0] + 1);
+
+        int dot = 0;
+        int other = 0;
+        for (int k = 1; k < newlinesCount; k++) {
+            int start = newlines[k - 1] + 1;
+            int end = newlines[k];
+            while (dot < dotsCount && dots[dot] < start) dot++;
+            while (other < othersCount && others[other] < start) other++;
+
+            if (!parseWellFormedLine(array, start, end, dot, other)) {
+                scalar.parseArray(array, start, end + 1);
+            }
+        }
+
+        // the last partial line is carried to the next segment
+        scalar.parseArray(array, newlines[newlinesCount - 1] + 1, to);
+    }
+
+    /**
+     * Adds the IP of the line [start, end) if it consists of four groups of 1-3 digits separated by dots.
+     *
+     * @return false if the line is not well-formed and must be parsed by the state machine
+     */
+    private boolean parseWellFormedLine(byte[] array, int start, int end, int dot, int other) {
+        if (other < othersCount && others[other] < end) return false;
+        if (dot + 3 > dotsCount) return false;
+        int dot1 = dots[dot];
+        int dot2 = dots[dot + 1];
+        int dot3 = dots[dot + 2];
+        if (dot3 >= end) return false;
+        if (dot + 3 < dotsCount && dots[dot + 3] < end) return false;
+
+        int len0 = dot1 - start;
+        int len1 = dot2 - dot1 - 1;
+        int len2 = dot3 - dot2 - 1;
+        int len3 = end - dot3 - 1;
+        if (!isGroupLength(len0) || !isGroupLength(len1) || !isGroupLength(len2) || !isGroupLength(len3)) {
+            return false;
+        }
+
+        int ip = toPart(array, start, len0);
+        ip = (ip << 8) | toPart(array, dot1 + 1, len1);
+        ip = (ip << 8) | toPart(array, dot2 + 1, len2);
+        ip = (ip << 8) | toPart(array, dot3 + 1, len3);
+        sink.accept(ip);
+        return true;
+    }
+
+    private static boolean isGroupLength(int length) {
+        return length >= 1 && length <= 3;
+    }
+
+    private static int toPart(byte[] array, int pos, int length) {
+        return switch (length) {
+            case 1 -> array[pos] - '0';
+            case 2 -> (array[pos] - '0') * 10 + (array[pos + 1] - '0');
+            default -> (array[pos] - '0') * 100 + (array[pos + 1] - '0') * 10 + (array[pos + 2] - '0');
+        };
+    }
+
+    /**
+     * Records the positions of newlines, dots and other non-digit bytes of [from, to), at most SEGMENT_SIZE bytes.
+     */
+    private void classify(byte[] array, int from, int to) {
+        newlinesCount = 0;
+        dotsCount = 0;
+        othersCount = 0;
+
+        int lanes = SPECIES.length();
+        int upperBound = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < upperBound; i += lanes) {
+            ByteVector v = ByteVector.fromArray(SPECIES, array, i);
+            VectorMask<Byte> isNewline = v.eq((byte) '\n');
+            VectorMask<Byte> isDot = v.eq((byte) '.');
+            VectorMask<Byte> isDigit = v.compare(VectorOperators.GE, (byte) '0')
+                    .and(v.compare(VectorOperators.LE, (byte) '9'));
+            VectorMask<Byte> isOther = isNewline.or(isDot).or(isDigit).not();
+
+            newlinesCount = appendPositions(newlines, newlinesCount, isNewline.toLong(), i);
+            dotsCount = appendPositions(dots, dotsCount, isDot.toLong(), i);
+            if (isOther.anyTrue()) {
+                othersCount = appendPositions(others, othersCount, isOther.toLong(), i);
+            }
+        }
+        for (; i < to; i++) {
+            byte b = array[i];
+            if (b == '\n') {
+                newlines[newlinesCount++] = i;
+            } else if (b == '.') {
+                dots[dotsCount++] = i;
+            } else if (b < '0' || b > '9') {
+                others[othersCount++] = i;
+            }
+        }
+    }
+
+    private static int appendPositions(int[] positions, int count, long bits, int base) {
+        while (bits != 0) {
+            positions[count++] = base + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+        }
+        return count;
+    }
+}
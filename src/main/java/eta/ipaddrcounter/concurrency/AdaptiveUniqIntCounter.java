@@ -0,0 +1,361 @@
+package eta.ipaddrcounter.concurrency;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A thread-safe counter for tracking unique integer values that only uses memory for the ranges that are present.
+ * <p>
+ * The 2^32 values (interpreted as unsigned 32-bit numbers) are divided into 65,536 containers of 65,536 values,
+ * selected by the high 16 bits. Like in Roaring bitmaps, each container picks its representation by density:
+ * <ul>
+ *     <li>a sorted array of the low 16 bits while it holds at most 4096 values,</li>
+ *     <li>a 8 KB bitmap above that,</li>
+ *     <li>a list of runs (start, length) for long consecutive ranges, e.g. a completely filled container.</li>
+ * </ul>
+ * Arrays become bitmaps as soon as they grow too large and full bitmaps become runs. {@link #optimize()}
+ * converts every container to its smallest representation, which is useful before the counter is kept for long.
+ * <p>
+ * For a few million distinct values this needs a few megabytes instead of the 512 MB of {@link UniqIntThreadSafeCounter},
+ * and counting only sums container cardinalities. Each container is guarded by its own lock; {@link #addAll(int[], int)}
+ * (e.g. through {@link UniqIntBatch}) takes that lock once per container per batch.
+ */
+public class AdaptiveUniqIntCounter implements UniqIntCounter {
+    private static final int CONTAINERS_NUMBER = 1 << 16;
+    private static final int CONTAINER_CAPACITY = 1 << 16;
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int BITMAP_WORDS = CONTAINER_CAPACITY / 64;
+    private static final int BITMAP_BYTES = BITMAP_WORDS * Long.BYTES;
+
+    private final AtomicReferenceArray<Slot> slots = new AtomicReferenceArray<>(CONTAINERS_NUMBER);
+
+    @Override
+    public boolean add(int value) {
+        Slot slot = getSlot(value >>> 16);
+        synchronized (slot) {
+            int cardinality = slot.container.cardinality();
+            slot.container = slot.container.add((char) value);
+            return slot.container.cardinality() != cardinality;
+        }
+    }
+
+    /**
+     * Adds the first {@code length} integers of the array to the counter.
+     * The values are sorted in place, so each container is locked once for all of its values.
+     *
+     * @param values the integer values to add; the array is reordered
+     * @param length the number of values to add from the start of the array
+     */
+    @Override
+    public void addAll(int[] values, int length) {
+        Arrays.sort(values, 0, length);
+        int i = 0;
+        while (i < length) {
+            int high = values[i] >>> 16;
+            Slot slot = getSlot(high);
+            synchronized (slot) {
+                Container container = slot.container;
+                do {
+                    container = container.add((char) values[i]);
+                    i++;
+                } while (i < length && values[i] >>> 16 == high);
+                slot.container = container;
+            }
+        }
+    }
+
+    @Override
+    public long getUniqCountAsLong() {
+        long count = 0;
+        for (int i = 0; i < CONTAINERS_NUMBER; i++) {
+            Slot slot = slots.get(i);
+            if (slot != null) {
+                synchronized (slot) {
+                    count += slot.container.cardinality();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the containers.
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (int i = 0; i < CONTAINERS_NUMBER; i++) {
+            Slot slot = slots.get(i);
+            if (slot != null) {
+                synchronized (slot) {
+                    size += slot.container.sizeInBytes();
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Converts every container to its smallest representation: array, bitmap or runs.
+     */
+    public void optimize() {
+        for (int i = 0; i < CONTAINERS_NUMBER; i++) {
+            Slot slot = slots.get(i);
+            if (slot != null) {
+                synchronized (slot) {
+                    slot.container = slot.container.toBitmap().toSmallest();
+                }
+            }
+        }
+    }
+
+    private Slot getSlot(int high) {
+        Slot slot = slots.get(high);
+        if (slot == null) {
+            Slot created = new Slot();
+            slot = slots.compareAndExchange(high, null, created);
+            if (slot == null) {
+                slot = created;
+            }
+        }
+        return slot;
+    }
+
+    private static final class Slot {
+        private Container container = new ArrayContainer();
+    }
+
+    /**
+     * A set of 16-bit values. {@link #add(char)} returns the container that holds the result,
+     * which is a new container if the representation had to change.
+     */
+    private abstract static class Container {
+        abstract Container add(char value);
+
+        abstract int cardinality();
+
+        abstract int sizeInBytes();
+
+        abstract BitmapContainer toBitmap();
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values = new char[4];
+        private int size;
+
+        @Override
+        Container add(char value) {
+            int pos = Arrays.binarySearch(values, 0, size, value);
+            if (pos >= 0) {
+                return this;
+            }
+            if (size == MAX_ARRAY_SIZE) {
+                return toBitmap().add(value);
+            }
+            pos = -pos - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(values.length * 2, MAX_ARRAY_SIZE));
+            }
+            System.arraycopy(values, pos, values, pos + 1, size - pos);
+            values[pos] = value;
+            size++;
+            return this;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return values.length * Character.BYTES;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < size; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words = new long[BITMAP_WORDS];
+        private int cardinality;
+
+        @Override
+        Container add(char value) {
+            int index = value >>> 6;
+            long bit = 1L << value;
+            if ((words[index] & bit) != 0) {
+                return this;
+            }
+            words[index] |= bit;
+            cardinality++;
+            return cardinality == CONTAINER_CAPACITY ? toRuns() : this;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return BITMAP_BYTES;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return this;
+        }
+
+        boolean contains(int value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        int runsNumber() {
+            int runs = 0;
+            long previousWord = 0;
+            for (long word : words) {
+                long runStarts = word & ~((word << 1) | (previousWord >>> 63));
+                runs += Long.bitCount(runStarts);
+                previousWord = word;
+            }
+            return runs;
+        }
+
+        Container toSmallest() {
+            int arrayBytes = cardinality <= MAX_ARRAY_SIZE ? cardinality * Character.BYTES : Integer.MAX_VALUE;
+            int runBytes = runsNumber() * 2 * Character.BYTES;
+            if (arrayBytes <= runBytes && arrayBytes <= BITMAP_BYTES) {
+                return toArray();
+            }
+            return runBytes < BITMAP_BYTES ? toRuns() : this;
+        }
+
+        ArrayContainer toArray() {
+            ArrayContainer array = new ArrayContainer();
+            array.values = new char[Math.max(cardinality, 1)];
+            for (int value = 0; value < CONTAINER_CAPACITY; value++) {
+                if (contains(value)) {
+                    array.values[array.size++] = (char) value;
+                }
+            }
+            return array;
+        }
+
+        RunContainer toRuns() {
+            RunContainer runs = new RunContainer(Math.max(runsNumber(), 1));
+            int value = 0;
+            while (value < CONTAINER_CAPACITY) {
+                if (!contains(value)) {
+                    value++;
+                    continue;
+                }
+                int start = value;
+                while (value < CONTAINER_CAPACITY && contains(value)) {
+                    value++;
+                }
+                runs.appendRun(start, value - start);
+            }
+            return runs;
+        }
+    }
+
+    private static final class RunContainer extends Container {
+        private static final int MAX_RUNS = BITMAP_BYTES / (2 * Character.BYTES);
+
+        // each run covers [starts[i], starts[i] + lengths[i]], lengths are stored minus one to fit a full container
+        private char[] starts;
+        private char[] lengths;
+        private int runs;
+        private int cardinality;
+
+        RunContainer(int capacity) {
+            starts = new char[capacity];
+            lengths = new char[capacity];
+        }
+
+        void appendRun(int start, int length) {
+            starts[runs] = (char) start;
+            lengths[runs] = (char) (length - 1);
+            runs++;
+            cardinality += length;
+        }
+
+        @Override
+        Container add(char value) {
+            int pos = Arrays.binarySearch(starts, 0, runs, value);
+            int run = pos >= 0 ? pos : -pos - 2; // the last run starting at or before the value
+            if (run >= 0 && value <= end(run)) {
+                return this;
+            }
+            boolean extendsPrevious = run >= 0 && value == end(run) + 1;
+            boolean extendsNext = run + 1 < runs && value + 1 == starts[run + 1];
+            if (extendsPrevious && extendsNext) {
+                lengths[run] = (char) (lengths[run] + lengths[run + 1] + 2);
+                removeRun(run + 1);
+            } else if (extendsPrevious) {
+                lengths[run]++;
+            } else if (extendsNext) {
+                starts[run + 1] = value;
+                lengths[run + 1]++;
+            } else {
+                if (runs == MAX_RUNS) {
+                    return toBitmap().add(value);
+                }
+                insertRun(run + 1, value);
+            }
+            cardinality++;
+            return this;
+        }
+
+        private int end(int run) {
+            return starts[run] + lengths[run];
+        }
+
+        private void insertRun(int index, char value) {
+            if (runs == starts.length) {
+                int capacity = Math.min(starts.length * 2, MAX_RUNS);
+                starts = Arrays.copyOf(starts, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            System.arraycopy(starts, index, starts, index + 1, runs - index);
+            System.arraycopy(lengths, index, lengths, index + 1, runs - index);
+            starts[index] = value;
+            lengths[index] = 0;
+            runs++;
+        }
+
+        private void removeRun(int index) {
+            System.arraycopy(starts, index + 1, starts, index, runs - index - 1);
+            System.arraycopy(lengths, index + 1, lengths, index, runs - index - 1);
+            runs--;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return starts.length * 2 * Character.BYTES;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < runs; i++) {
+                for (int value = starts[i]; value <= end(i); value++) {
+                    bitmap.words[value >>> 6] |= 1L << value;
+                }
+            }
+            bitmap.cardinality = cardinality;
+            return bitmap;
+        }
+    }
+}
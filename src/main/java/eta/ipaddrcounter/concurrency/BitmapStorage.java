@@ -0,0 +1,47 @@
+package eta.ipaddrcounter.concurrency;
+
+/**
+ * The array of 64-bit words behind {@link UniqIntThreadSafeCounter}, with atomic access to every word.
+ * <p>
+ * Implementations: {@link HeapBitmapStorage} on the Java heap and {@link OffHeapBitmapStorage} in native memory.
+ */
+public interface BitmapStorage extends AutoCloseable {
+
+    /**
+     * Returns the number of 64-bit words.
+     */
+    int length();
+
+    /**
+     * Returns the word at the given index with volatile semantics.
+     */
+    long get(int index);
+
+    /**
+     * Atomically sets the word at the given index to {@code newValue} if it currently equals {@code expectedValue}.
+     *
+     * @return true if successful
+     */
+    boolean compareAndSet(int index, long expectedValue, long newValue);
+
+    /**
+     * Sets the words [from, to) to zero, e.g. to reuse the storage for another count.
+     * Must not run concurrently with updates of the same words.
+     */
+    void clear(int from, int to);
+
+    /**
+     * Returns true if the storage was allocated zeroed, so a counter on top of it starts empty without a popcount.
+     * Storages that may hold values from elsewhere, such as a file, return false.
+     */
+    default boolean isAllocatedZeroed() {
+        return false;
+    }
+
+    /**
+     * Releases the memory of the storage. The storage must not be used afterwards.
+     */
+    @Override
+    default void close() {
+    }
+}
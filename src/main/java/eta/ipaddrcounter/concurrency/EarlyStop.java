@@ -0,0 +1,39 @@
+package eta.ipaddrcounter.concurrency;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Stops the tasks of a run from inside a task, when the result is known before all input is processed.
+ * <p>
+ * Stopping shuts the registered executors down with {@link ExecutorService#shutdownNow()}, the same cancellation
+ * as on a failure: every task sees its interrupt flag at the next buffer and leaves with {@link ThreadWasInterrupted},
+ * and blocked queue operations are interrupted. {@link TasksUtil#waitForFutures(List, ExecutorService, EarlyStop)}
+ * does not report the tasks of a stopped run as failed.
+ */
+public final class EarlyStop {
+    private final List<ExecutorService> executors = new CopyOnWriteArrayList<>();
+    private volatile boolean stopped;
+
+    /**
+     * Adds an executor to shut down on stop; an executor registered after the stop is shut down at once.
+     */
+    public void register(ExecutorService executor) {
+        executors.add(executor);
+        if (stopped) {
+            executor.shutdownNow();
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+        for (ExecutorService executor : executors) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+}
@@ -0,0 +1,42 @@
+package eta.ipaddrcounter.concurrency;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link BitmapStorage} backed by an {@code AtomicLongArray} on the Java heap.
+ * The memory is reclaimed by the garbage collector.
+ */
+public class HeapBitmapStorage implements BitmapStorage {
+    private final AtomicLongArray words;
+
+    public HeapBitmapStorage(int length) {
+        this.words = new AtomicLongArray(length);
+    }
+
+    @Override
+    public int length() {
+        return words.length();
+    }
+
+    @Override
+    public long get(int index) {
+        return words.get(index);
+    }
+
+    @Override
+    public void clear(int from, int to) {
+        for (int i = from; i < to; i++) {
+            words.setPlain(i, 0);
+        }
+    }
+
+    @Override
+    public boolean isAllocatedZeroed() {
+        return true;
+    }
+
+    @Override
+    public boolean compareAndSet(int index, long expectedValue, long newValue) {
+        return words.compareAndSet(index, expectedValue, newValue);
+    }
+}
@@ -0,0 +1,195 @@
+package eta.ipaddrcounter.concurrency;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An approximate counter of unique integer values backed by a HyperLogLog sketch of {@code 2^precision} registers.
+ * <p>
+ * Like HyperLogLog++ every value is hashed to 64 bits, so there is no large-range correction: the first
+ * {@code precision} bits select a register, which keeps the maximum number of leading zeros of the remaining bits
+ * plus one. Instead of the empirical bias tables of HyperLogLog++ the count is estimated from the histogram of the
+ * register values with the improved estimator by O. Ertl ("New cardinality estimation algorithms for HyperLogLog
+ * sketches", 2017), which is unbiased from small to very large counts. The relative standard error is
+ * {@code 1.04 / sqrt(2^precision)}, e.g. 0.81% with 16 KB of registers for precision 14.
+ * <p>
+ * Every adding thread updates its own register array without atomics; the arrays are merged by taking the register-wise
+ * maximum when the count is requested, which must happen after the adding threads have finished.
+ * Sketches of the same precision can be combined with {@link #merge(HyperLogLogCounter)}.
+ */
+public class HyperLogLogCounter implements UniqIntCounter {
+    /**
+     * The default precision, 16,384 registers and a relative standard error of 0.81%.
+     */
+    public static final int DEF_PRECISION = 14;
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final List<byte[]> registerArrays = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<byte[]> localRegisters = ThreadLocal.withInitial(this::newRegisters);
+
+    public HyperLogLogCounter() {
+        this(DEF_PRECISION);
+    }
+
+    /**
+     * @param precision the number of hash bits that select a register, from 4 to 18
+     */
+    public HyperLogLogCounter(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+            throw new IllegalArgumentException("Precision must be in range [" + MIN_PRECISION + ", " + MAX_PRECISION + "]");
+        this.precision = precision;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns the relative standard error of the estimate for the given precision.
+     */
+    public static double relativeStandardError(int precision) {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    /**
+     * Adds the value to the sketch of the current thread.
+     *
+     * @return true if a register of the current thread grew; false means the value was probably seen before
+     */
+    @Override
+    public boolean add(int value) {
+        return addHash(localRegisters.get(), hash(value));
+    }
+
+    @Override
+    public void addAll(int[] values, int length) {
+        byte[] registers = localRegisters.get();
+        for (int i = 0; i < length; i++) {
+            addHash(registers, hash(values[i]));
+        }
+    }
+
+    /**
+     * Adds all values of the other sketch to this one, as if they had been added to this sketch.
+     *
+     * @throws IllegalArgumentException if the sketches have different precisions
+     */
+    public void merge(HyperLogLogCounter other) {
+        if (other.precision != precision)
+            throw new IllegalArgumentException("Cannot merge precision " + other.precision + " into " + precision);
+        registerArrays.add(other.mergeRegisters());
+    }
+
+    /**
+     * Returns the estimated number of unique values that have been added.
+     */
+    @Override
+    public long getUniqCountAsLong() {
+        byte[] registers = mergeRegisters();
+        int q = 64 - precision;
+        int[] histogram = new int[q + 2];
+        for (byte register : registers) {
+            histogram[register]++;
+        }
+        return Math.round(estimate(histogram, registers.length, q));
+    }
+
+    @Override
+    public void close() {
+        registerArrays.clear();
+        localRegisters.remove();
+    }
+
+    private byte[] newRegisters() {
+        byte[] registers = new byte[1 << precision];
+        registerArrays.add(registers);
+        return registers;
+    }
+
+    private byte[] mergeRegisters() {
+        byte[] merged = new byte[1 << precision];
+        for (byte[] registers : registerArrays) {
+            for (int i = 0; i < merged.length; i++) {
+                if (registers[i] > merged[i]) {
+                    merged[i] = registers[i];
+                }
+            }
+        }
+        return merged;
+    }
+
+    private boolean addHash(byte[] registers, long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // a marker bit keeps the rank at most 64 - precision + 1 when the remaining bits are all zero
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, a bijective mix of all input bits into all output bits.
+     */
+    private static long hash(int value) {
+        long h = value & 0xFFFFFFFFL;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * The improved raw estimator of Ertl, section 4 of the paper.
+     *
+     * @param histogram the number of registers with each value from 0 to q + 1
+     * @param m         the number of registers
+     * @param q         the number of hash bits after the register index
+     */
+    private static double estimate(int[] histogram, int m, int q) {
+        double z = m * tau(1 - (double) histogram[q + 1] / m);
+        for (int k = q; k >= 1; k--) {
+            z = 0.5 * (z + histogram[k]);
+        }
+        z += m * sigma((double) histogram[0] / m);
+        return m / (2 * Math.log(2)) * m / z;
+    }
+
+    private static double sigma(double x) {
+        if (x == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1) {
+            return 0;
+        }
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1 - x) * (1 - x) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+}
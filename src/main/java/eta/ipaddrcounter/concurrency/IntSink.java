@@ -0,0 +1,33 @@
+package eta.ipaddrcounter.concurrency;
+
+/**
+ * A consumer of the integer values produced by a parser, e.g. IPv4 addresses converted to ints.
+ * <p>
+ * Parsers only know this interface, so the same parser can feed an exact counter ({@link UniqIntCounter}),
+ * a sketch ({@link HyperLogLogCounter}), a batching layer ({@link UniqIntBatch}) or any other statistic.
+ * A parser feeds a single sink for the whole run, so the calls stay monomorphic and can be inlined by the JIT.
+ */
+public interface IntSink {
+
+    /**
+     * Consumes one value.
+     *
+     * @param value the value
+     */
+    void accept(int value);
+
+    /**
+     * Consumes the first {@code length} values of the array.
+     *
+     * @param values the values; implementations may reorder the array
+     * @param length the number of values to consume from the start of the array
+     */
+    void accept(int[] values, int length);
+
+    /**
+     * Makes all consumed values visible downstream. Called by a parser after its last buffer;
+     * sinks that do not buffer values have nothing to do.
+     */
+    default void flush() {
+    }
+}
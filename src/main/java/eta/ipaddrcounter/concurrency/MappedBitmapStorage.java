@@ -0,0 +1,103 @@
+package eta.ipaddrcounter.concurrency;
+
+import eta.ipaddrcounter.file.DirectBuffers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link BitmapStorage} memory-mapped from a file, so the bitmap outlives the process.
+ * <p>
+ * The file holds exactly {@code length} little-endian 64-bit words and nothing else. A missing file is created
+ * sparse and zeroed; an existing file is mapped as it is, so loading a saved bitmap costs no read or parse:
+ * pages are faulted in as the counter touches them. {@link #force()} writes the dirty pages back to the file,
+ * {@link #close()} forces and unmaps it.
+ */
+public class MappedBitmapStorage implements BitmapStorage {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final MappedByteBuffer words;
+    private final int length;
+    private final boolean created;
+    private boolean closed;
+
+    /**
+     * @param file   the bitmap file, created if it does not exist
+     * @param length the number of 64-bit words
+     * @throws IllegalArgumentException if the existing file does not have {@code length} words
+     */
+    public MappedBitmapStorage(Path file, int length) {
+        long bytes = (long) length * Long.BYTES;
+        if (length <= 0 || bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Length must be in range (0, " + Integer.MAX_VALUE / Long.BYTES + "]");
+        try {
+            boolean exists = Files.exists(file);
+            if (exists && Files.size(file) != bytes)
+                throw new IllegalArgumentException("Bitmap file must have " + bytes + " bytes: " + file);
+            this.created = !exists;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                this.words = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public long get(int index) {
+        return (long) LONGS.getVolatile(words, index * Long.BYTES);
+    }
+
+    @Override
+    public void clear(int from, int to) {
+        for (int i = from; i < to; i++) {
+            words.putLong(i * Long.BYTES, 0);
+        }
+    }
+
+    /**
+     * Returns true if the file did not exist and was created zeroed.
+     */
+    @Override
+    public boolean isAllocatedZeroed() {
+        return created;
+    }
+
+    @Override
+    public boolean compareAndSet(int index, long expectedValue, long newValue) {
+        return LONGS.compareAndSet(words, index * Long.BYTES, expectedValue, newValue);
+    }
+
+    /**
+     * Writes the modified words to the file.
+     */
+    public synchronized void force() {
+        if (!closed) {
+            words.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            words.force();
+            closed = true;
+            DirectBuffers.free(words);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package eta.ipaddrcounter.concurrency;
+
+import eta.ipaddrcounter.file.DirectBuffers;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link BitmapStorage} in native memory, outside the Java heap.
+ * <p>
+ * The words live in a direct {@code ByteBuffer} and are accessed with 64-bit atomic {@link VarHandle} operations.
+ * The buffer can be aligned to 2 MB, so that with transparent huge pages enabled the bitmap is backed by huge pages
+ * and causes fewer TLB misses. {@link #close()} frees the memory immediately instead of waiting for the garbage collector.
+ * <p>
+ * Direct memory is limited by {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap size.
+ * When running with a small heap, set it to at least the size of the bitmap (e.g. {@code -XX:MaxDirectMemorySize=1g}).
+ */
+public class OffHeapBitmapStorage implements BitmapStorage {
+    /**
+     * The size of a transparent huge page on x86-64 and most aarch64 kernels.
+     */
+    public static final int HUGE_PAGE_SIZE = 2 * 1024 * 1024;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer allocated;
+    private final ByteBuffer words;
+    private final int length;
+    private boolean closed;
+
+    /**
+     * @param length          the number of 64-bit words
+     * @param hugePageAligned whether to align the words to {@link #HUGE_PAGE_SIZE} instead of the word size
+     */
+    public OffHeapBitmapStorage(int length, boolean hugePageAligned) {
+        int alignment = hugePageAligned ? HUGE_PAGE_SIZE : Long.BYTES;
+        long bytes = (long) length * Long.BYTES + alignment;
+        if (length <= 0 || bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Length must be in range (0, " + (Integer.MAX_VALUE - alignment) / Long.BYTES + "]");
+        this.allocated = ByteBuffer.allocateDirect((int) bytes);
+        this.words = allocated.alignedSlice(alignment);
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public long get(int index) {
+        return (long) LONGS.getVolatile(words, index * Long.BYTES);
+    }
+
+    @Override
+    public void clear(int from, int to) {
+        for (int i = from; i < to; i++) {
+            words.putLong(i * Long.BYTES, 0);
+        }
+    }
+
+    @Override
+    public boolean isAllocatedZeroed() {
+        return true;
+    }
+
+    @Override
+    public boolean compareAndSet(int index, long expectedValue, long newValue) {
+        return LONGS.compareAndSet(words, index * Long.BYTES, expectedValue, newValue);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            DirectBuffers.free(allocated);
+        }
+    }
+}
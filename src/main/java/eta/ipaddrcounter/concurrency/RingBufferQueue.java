@@ -0,0 +1,158 @@
+package eta.ipaddrcounter.concurrency;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded lock-free multi-producer multi-consumer queue on a preallocated ring (D. Vyukov's array queue).
+ * <p>
+ * Every slot has a sequence number that tells producers and consumers whether the slot is free or filled for
+ * their lap of the ring, so an operation is one CAS on the enqueue or dequeue position plus a release store,
+ * with no locks and no allocation. {@link #put(Object)} and {@link #take()} wait without a lock either:
+ * they spin first, then yield, then park with a growing timeout, so a waiting thread reacts within microseconds
+ * when data flows and sleeps when it does not.
+ *
+ * @param <E> the type of the elements
+ */
+public class RingBufferQueue<E> {
+    private static final int SPINS = 100;
+    private static final int YIELDS = 10;
+    private static final long MAX_PARK_NANOS = 100_000;
+
+    // the positions are 128 bytes apart, so producers and consumers do not share a cache line
+    private static final int PAD = 16;
+    private static final int ENQUEUE = PAD;
+    private static final int DEQUEUE = 2 * PAD;
+
+    private final int mask;
+    private final Object[] items;
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray positions = new AtomicLongArray(3 * PAD);
+
+    /**
+     * @param capacity the minimal number of elements the queue can hold, rounded up to a power of two
+     */
+    public RingBufferQueue(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be greater than 0");
+        if (capacity > 1 << 30) throw new IllegalArgumentException("Capacity must not be greater than 2^30");
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        size = Math.max(size, 1);
+        mask = size - 1;
+        items = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds the element if the queue is not full.
+     *
+     * @return false if the queue is full
+     */
+    public boolean offer(E element) {
+        if (element == null) throw new NullPointerException("Element must not be null");
+        long pos = positions.get(ENQUEUE);
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.getAcquire(index) - pos;
+            if (diff == 0) {
+                long witness = positions.compareAndExchange(ENQUEUE, pos, pos + 1);
+                if (witness == pos) {
+                    items[index] = element;
+                    sequences.setRelease(index, pos + 1);
+                    return true;
+                }
+                pos = witness;
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = positions.get(ENQUEUE);
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element if the queue is not empty.
+     *
+     * @return the element, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = positions.get(DEQUEUE);
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.getAcquire(index) - (pos + 1);
+            if (diff == 0) {
+                long witness = positions.compareAndExchange(DEQUEUE, pos, pos + 1);
+                if (witness == pos) {
+                    E element = (E) items[index];
+                    items[index] = null;
+                    sequences.setRelease(index, pos + mask + 1);
+                    return element;
+                }
+                pos = witness;
+            } else if (diff < 0) {
+                return null;
+            } else {
+                pos = positions.get(DEQUEUE);
+            }
+        }
+    }
+
+    /**
+     * Adds the element, failing if the queue is full; used to fill a queue before it is shared.
+     *
+     * @throws IllegalStateException if the queue is full
+     */
+    public void add(E element) {
+        if (!offer(element)) {
+            throw new IllegalStateException("Queue full");
+        }
+    }
+
+    /**
+     * Adds the element, waiting while the queue is full.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void put(E element) throws InterruptedException {
+        for (int attempt = 0; !offer(element); attempt++) {
+            backoff(attempt);
+        }
+    }
+
+    /**
+     * Removes the oldest element, waiting while the queue is empty.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public E take() throws InterruptedException {
+        E element;
+        for (int attempt = 0; (element = poll()) == null; attempt++) {
+            backoff(attempt);
+        }
+        return element;
+    }
+
+    /**
+     * Returns the number of elements the queue can hold.
+     */
+    public int capacity() {
+        return items.length;
+    }
+
+    private static void backoff(int attempt) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            int parks = Math.min(attempt - SPINS - YIELDS, 17);
+            LockSupport.parkNanos(Math.min(1L << parks, MAX_PARK_NANOS));
+        }
+    }
+}
@@ -6,9 +6,11 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class TasksUtil {
 
@@ -16,11 +18,38 @@ public final class TasksUtil {
     }
 
     public static void executeAndWait(List<? extends Runnable> tasks, int threadsNumber, final String threadPrefix) {
+        executeAndWait(tasks, threadsNumber, threadPrefix, new EarlyStop());
+    }
+
+    /**
+     * Runs the tasks like {@link #executeAndWait(List, int, String)}, but returns without an error as soon as
+     * a task stops the run with the given {@link EarlyStop}; the remaining tasks are interrupted.
+     */
+    public static void executeAndWait(List<? extends Runnable> tasks, int threadsNumber, final String threadPrefix,
+                                      EarlyStop stop) {
         ThreadFactory threadFactory = getThreadFactoryForExecutor(threadPrefix);
         try (ExecutorService executor = Executors.newFixedThreadPool(threadsNumber, threadFactory)) {
+            stop.register(executor);
             List<Future<?>> futures = execute(tasks, executor);
-            waitForFutures(futures, executor);
+            waitForFutures(futures, executor, stop);
+        }
+    }
+
+    /**
+     * Splits [0, size) into one contiguous range per thread, applies the function to every range in parallel
+     * and returns the sum of the results.
+     */
+    public static long sumOverRanges(int size, int threadsNumber, String threadPrefix, RangeFunction function) {
+        int rangeSize = (size + threadsNumber - 1) / threadsNumber;
+        AtomicLong sum = new AtomicLong();
+        List<Runnable> tasks = new ArrayList<>(threadsNumber);
+        for (int start = 0; start < size; start += rangeSize) {
+            int from = start;
+            int to = Math.min(start + rangeSize, size);
+            tasks.add(() -> sum.addAndGet(function.apply(from, to)));
         }
+        executeAndWait(tasks, threadsNumber, threadPrefix);
+        return sum.get();
     }
 
     public static ThreadFactory getThreadFactoryForExecutor(String threadPrefix) {
@@ -38,14 +67,20 @@ public final class TasksUtil {
         List<Future<?>> futures = new ArrayList<>();
 
         for (Runnable task : tasks) {
-            Future<?> future = executor.submit(() -> {
-                try {
-                    task.run();
-                } catch (Exception e) {
-                    executor.shutdownNow();
-                    throw new RuntimeException(e);
-                }
-            });
+            Future<?> future;
+            try {
+                future = executor.submit(() -> {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        executor.shutdownNow();
+                        throw new RuntimeException(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // a task already failed or stopped the run, the futures submitted so far report it
+                break;
+            }
             futures.add(future);
         }
 
@@ -53,6 +88,14 @@ public final class TasksUtil {
     }
 
     public static void waitForFutures(List<Future<?>> futures, ExecutorService executor) {
+        waitForFutures(futures, executor, new EarlyStop());
+    }
+
+    /**
+     * Waits for the futures like {@link #waitForFutures(List, ExecutorService)}. Once the run is stopped,
+     * the tasks that were interrupted or failed on the way out are not reported.
+     */
+    public static void waitForFutures(List<Future<?>> futures, ExecutorService executor, EarlyStop stop) {
         try {
             for (Future<?> future : futures) {
                 future.get();
@@ -63,6 +106,9 @@ public final class TasksUtil {
             }
         } catch (ExecutionException e) {
             executor.shutdownNow();
+            if (stop.isStopped()) {
+                return;
+            }
             throw new RuntimeException("Task failed", e.getCause());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -70,4 +116,9 @@ public final class TasksUtil {
             throw new RuntimeException("Task interrupted", e);
         }
     }
+
+    @FunctionalInterface
+    public interface RangeFunction {
+        long apply(int from, int to);
+    }
 }
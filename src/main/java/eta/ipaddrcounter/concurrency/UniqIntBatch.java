@@ -0,0 +1,63 @@
+package eta.ipaddrcounter.concurrency;
+
+/**
+ * A single-threaded buffer in front of another {@link IntSink}, typically a shared {@link UniqIntCounter} such as
+ * {@link UniqIntThreadSafeCounter}.
+ * <p>
+ * Values are collected in a small primitive array and passed on with {@link IntSink#accept(int[], int)}
+ * when the array is full, so each touched bitmap word costs one CAS loop per batch instead of one per value.
+ * This reduces contention when many threads add the same hot values. Each thread must own its own batch
+ * and call {@link #flush()} when it is done; values are not visible in the sink before that.
+ */
+public final class UniqIntBatch implements IntSink {
+    private final IntSink sink;
+    private final int[] values;
+    private int size;
+
+    /**
+     * @param sink      the sink the values are flushed to, e.g. a shared counter
+     * @param batchSize the number of values collected before they are flushed
+     */
+    public UniqIntBatch(IntSink sink, int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be greater than 0");
+        this.sink = sink;
+        this.values = new int[batchSize];
+    }
+
+    public void add(int value) {
+        values[size++] = value;
+        if (size == values.length) {
+            flushValues();
+        }
+    }
+
+    @Override
+    public void accept(int value) {
+        add(value);
+    }
+
+    /**
+     * Passes the collected values and then the given ones to the sink, without copying a full array.
+     */
+    @Override
+    public void accept(int[] values, int length) {
+        flushValues();
+        sink.accept(values, length);
+    }
+
+    /**
+     * Passes all collected values to the sink and flushes it.
+     */
+    @Override
+    public void flush() {
+        flushValues();
+        sink.flush();
+    }
+
+    private void flushValues() {
+        if (size > 0) {
+            sink.accept(values, size);
+            size = 0;
+        }
+    }
+}
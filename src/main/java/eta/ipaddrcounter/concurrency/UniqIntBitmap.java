@@ -0,0 +1,102 @@
+package eta.ipaddrcounter.concurrency;
+
+import java.util.List;
+
+/**
+ * A counter of unique integer values backed by a plain {@code long[]} bit set.
+ * <p>
+ * Unlike {@link UniqIntThreadSafeCounter} this class is <b>not</b> thread-safe: it is meant to be owned by a single
+ * processing thread, so adding a value is a plain read-modify-write without atomics. The bitmaps of all threads are
+ * combined at the end with {@link #mergeAndCount(List, int)}.
+ * <p>
+ * The array size is fixed at 2^26 longs (512 MB), which is sufficient to represent all 2^32 possible values.
+ */
+public class UniqIntBitmap implements UniqIntCounter {
+    /**
+     * The number of bytes allocated by one bitmap.
+     */
+    public static final long SIZE_BYTES = 1L << 29;
+
+    private static final int LONG_SIZE = 64;
+    private static final int ARRAY_SIZE = 1 << 26; // 2^32 / 64
+    private final long[] bits = new long[ARRAY_SIZE];
+
+    @Override
+    public boolean add(int value) {
+        long unsignedValue = value & 0xFFFFFFFFL;
+        int index = (int) (unsignedValue / LONG_SIZE);
+        long word = bits[index];
+        long next = word | 1L << (unsignedValue % LONG_SIZE);
+        bits[index] = next;
+        return next != word;
+    }
+
+    @Override
+    public void addAll(int[] values, int length) {
+        for (int i = 0; i < length; i++) {
+            add(values[i]);
+        }
+    }
+
+    /**
+     * Returns the total number of unique integer values that have been added.
+     * The bitmap words are popcounted in parallel by all available processors.
+     */
+    @Override
+    public long getUniqCountAsLong() {
+        return TasksUtil.sumOverRanges(ARRAY_SIZE, Runtime.getRuntime().availableProcessors(), "bitmap-popcount-",
+                (from, to) -> countRange(bits, from, to));
+    }
+
+    /**
+     * Returns the bitmap word of the values [index * 64, index * 64 + 64).
+     */
+    long getWord(int index) {
+        return bits[index];
+    }
+
+    /**
+     * Returns the bitmap words themselves, for merges that rewrite the whole bitmap.
+     */
+    long[] words() {
+        return bits;
+    }
+
+    /**
+     * ORs all bitmaps into the first one and counts the unique values of the union.
+     * The word range is split between {@code threadsNumber} threads, each merging and counting its own part.
+     *
+     * @param bitmaps       the bitmaps to merge, at least one
+     * @param threadsNumber the number of threads used for the merge
+     * @return the count of unique values in all bitmaps
+     */
+    public static long mergeAndCount(List<UniqIntBitmap> bitmaps, int threadsNumber) {
+        if (bitmaps.isEmpty()) throw new IllegalArgumentException("Bitmaps must not be empty");
+        long[] target = bitmaps.get(0).bits;
+        long[][] sources = bitmaps.stream().skip(1).map(b -> b.bits).toArray(long[][]::new);
+
+        return TasksUtil.sumOverRanges(ARRAY_SIZE, threadsNumber, "bitmap-merge-",
+                (from, to) -> mergeAndCountRange(target, sources, from, to));
+    }
+
+    private static long mergeAndCountRange(long[] target, long[][] sources, int from, int to) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            long word = target[i];
+            for (long[] source : sources) {
+                word |= source[i];
+            }
+            target[i] = word;
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static long countRange(long[] words, int from, int to) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            count += Long.bitCount(words[i]);
+        }
+        return count;
+    }
+}
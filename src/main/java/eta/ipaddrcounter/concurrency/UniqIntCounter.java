@@ -0,0 +1,68 @@
+package eta.ipaddrcounter.concurrency;
+
+/**
+ * A counter of unique integer values, treated as unsigned 32-bit numbers.
+ * <p>
+ * Implementations: {@link UniqIntThreadSafeCounter}, shared by all processing threads,
+ * and {@link UniqIntBitmap}, owned by a single thread. {@link HyperLogLogCounter} estimates the count
+ * in bounded memory instead of counting exactly.
+ */
+public interface UniqIntCounter extends IntSink, AutoCloseable {
+
+    /**
+     * Adds an integer to the counter. If the value has already been added, this method has no effect.
+     *
+     * @param value the integer value to add
+     * @return true if the counter changed: for exact counters, if the value had not been added before
+     */
+    boolean add(int value);
+
+    /**
+     * Adds the first {@code length} integers of the array to the counter.
+     *
+     * @param values the integer values to add; implementations may reorder the array
+     * @param length the number of values to add from the start of the array
+     */
+    void addAll(int[] values, int length);
+
+    /**
+     * Adds the value, see {@link #add(int)}.
+     */
+    @Override
+    default void accept(int value) {
+        add(value);
+    }
+
+    /**
+     * Adds the values, see {@link #addAll(int[], int)}.
+     */
+    @Override
+    default void accept(int[] values, int length) {
+        addAll(values, length);
+    }
+
+    /**
+     * Returns the total number of unique integer values that have been added.
+     *
+     * @return the count of unique values, up to 2^32.
+     */
+    long getUniqCountAsLong();
+
+    /**
+     * Returns the total number of unique integer values that have been added.
+     *
+     * @return the count of unique values.
+     * @throws ArithmeticException if the count does not fit into an int, use {@link #getUniqCountAsLong()} instead
+     */
+    default int getUniqCount() {
+        return Math.toIntExact(getUniqCountAsLong());
+    }
+
+    /**
+     * Releases the memory held by the counter, if it is not managed by the garbage collector.
+     * The counter must not be used afterwards.
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,13 @@
+package eta.ipaddrcounter.concurrency;
+
+/**
+ * Creates the counter shared by the processing threads of one count.
+ * See {@link UniqIntCounterType} for the available implementations.
+ */
+@FunctionalInterface
+public interface UniqIntCounterFactory {
+    /**
+     * Creates a new empty thread-safe counter. The caller closes it when the count is finished.
+     */
+    UniqIntCounter create();
+}
@@ -0,0 +1,53 @@
+package eta.ipaddrcounter.concurrency;
+
+/**
+ * The shared counter implementations a count can use.
+ */
+public enum UniqIntCounterType implements UniqIntCounterFactory {
+    /**
+     * {@link UniqIntThreadSafeCounter} with its bitmap on the Java heap.
+     */
+    HEAP {
+        @Override
+        public UniqIntCounter create() {
+            return new UniqIntThreadSafeCounter();
+        }
+    },
+    /**
+     * {@link UniqIntThreadSafeCounter} with its bitmap in native memory, freed as soon as the count is finished.
+     */
+    OFF_HEAP {
+        @Override
+        public UniqIntCounter create() {
+            return new UniqIntThreadSafeCounter(new OffHeapBitmapStorage(UniqIntThreadSafeCounter.ARRAY_SIZE, false));
+        }
+    },
+    /**
+     * Like {@link #OFF_HEAP}, with the bitmap aligned to 2 MB for transparent huge pages.
+     */
+    OFF_HEAP_HUGE_PAGES {
+        @Override
+        public UniqIntCounter create() {
+            return new UniqIntThreadSafeCounter(new OffHeapBitmapStorage(UniqIntThreadSafeCounter.ARRAY_SIZE, true));
+        }
+    },
+    /**
+     * {@link AdaptiveUniqIntCounter} with array, bitmap and run containers, for inputs with few distinct values.
+     */
+    ADAPTIVE {
+        @Override
+        public UniqIntCounter create() {
+            return new AdaptiveUniqIntCounter();
+        }
+    },
+    /**
+     * {@link HyperLogLogCounter} with the default precision: an approximate count (about 0.8% error)
+     * in a few kilobytes per thread, for runs with bounded memory.
+     */
+    HYPER_LOG_LOG {
+        @Override
+        public UniqIntCounter create() {
+            return new HyperLogLogCounter();
+        }
+    }
+}
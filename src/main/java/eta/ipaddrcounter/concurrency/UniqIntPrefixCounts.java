@@ -0,0 +1,110 @@
+package eta.ipaddrcounter.concurrency;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Unique value counts grouped by prefix, e.g. the distinct IPv4 addresses per /8, /16 or /24 network.
+ * <p>
+ * The values of a prefix of length {@code l} occupy {@code 2^(26 - l)} consecutive bitmap words, e.g. 4 words for
+ * a /24 and 1024 words for a /16, so the count of a prefix is the popcount of its word range. The prefix range
+ * is split between threads, each popcounting its prefixes and keeping its own top N in a small heap; the heaps
+ * are merged at the end. No count per prefix is materialized, so even a /24 breakdown needs no extra memory.
+ */
+public final class UniqIntPrefixCounts {
+    /**
+     * The longest supported prefix, a prefix must cover at least one whole 64-bit word.
+     */
+    public static final int MAX_PREFIX_LENGTH = 26;
+
+    private static final Comparator<PrefixCount> BY_COUNT_DESC = Comparator.comparingLong(PrefixCount::count)
+            .reversed()
+            .thenComparingLong(count -> count.prefix() & 0xFFFFFFFFL);
+
+    /**
+     * The number of unique values that start with a prefix.
+     *
+     * @param prefix       the first value of the prefix, e.g. 10.1.0.0 as an int for 10.1.0.0/16
+     * @param prefixLength the number of leading bits of the prefix
+     * @param count        the number of unique values in the prefix
+     */
+    public record PrefixCount(int prefix, int prefixLength, long count) {
+        /**
+         * Returns the prefix in the CIDR notation of IPv4 networks, e.g. {@code 10.1.0.0/16}.
+         */
+        public String toCidr() {
+            return (prefix >>> 24) + "." + ((prefix >>> 16) & 0xFF) + "." + ((prefix >>> 8) & 0xFF) + "."
+                    + (prefix & 0xFF) + "/" + prefixLength;
+        }
+    }
+
+    private UniqIntPrefixCounts() {
+    }
+
+    /**
+     * Returns the {@code n} prefixes with the most unique values in the counter, by descending count.
+     * Prefixes without values are never returned. The counter must not be modified concurrently.
+     *
+     * @param counter       the counter
+     * @param prefixLength  the prefix length, from 1 to {@value #MAX_PREFIX_LENGTH}
+     * @param n             the maximum number of prefixes to return
+     * @param threadsNumber the number of threads that popcount the bitmap
+     */
+    public static List<PrefixCount> topPrefixes(UniqIntThreadSafeCounter counter, int prefixLength, int n,
+                                                int threadsNumber) {
+        return topPrefixes((WordSource) counter::getWord, prefixLength, n, threadsNumber);
+    }
+
+    /**
+     * Returns the {@code n} prefixes with the most unique values in the bitmap, by descending count,
+     * like {@link #topPrefixes(UniqIntThreadSafeCounter, int, int, int)}.
+     */
+    public static List<PrefixCount> topPrefixes(UniqIntBitmap bitmap, int prefixLength, int n, int threadsNumber) {
+        return topPrefixes((WordSource) bitmap::getWord, prefixLength, n, threadsNumber);
+    }
+
+    private static List<PrefixCount> topPrefixes(WordSource words, int prefixLength, int n, int threadsNumber) {
+        if (prefixLength < 1 || prefixLength > MAX_PREFIX_LENGTH)
+            throw new IllegalArgumentException("Prefix length must be in range [1, " + MAX_PREFIX_LENGTH + "]");
+        if (n <= 0) throw new IllegalArgumentException("N must be greater than 0");
+        if (threadsNumber <= 0) throw new IllegalArgumentException("Threads number must be greater than 0");
+
+        int prefixesNumber = 1 << prefixLength;
+        int wordsPerPrefix = 1 << (MAX_PREFIX_LENGTH - prefixLength);
+        int rangesNumber = Math.min(prefixesNumber, threadsNumber);
+        int rangeSize = (prefixesNumber + rangesNumber - 1) / rangesNumber;
+
+        List<PrefixCount> candidates = new ArrayList<>();
+        List<Runnable> tasks = new ArrayList<>(rangesNumber);
+        for (int start = 0; start < prefixesNumber; start += rangeSize) {
+            int from = start;
+            int to = Math.min(start + rangeSize, prefixesNumber);
+            tasks.add(() -> {
+                // a min-heap of the best n prefixes of the range, the weakest on top
+                PriorityQueue<PrefixCount> top = new PriorityQueue<>(BY_COUNT_DESC.reversed());
+                for (int p = from; p < to; p++) {
+                    long count = 0;
+                    int base = p * wordsPerPrefix;
+                    for (int w = 0; w < wordsPerPrefix; w++) {
+                        count += Long.bitCount(words.get(base + w));
+                    }
+                    if (count > 0 && (top.size() < n || count > top.peek().count())) {
+                        top.add(new PrefixCount(p << (32 - prefixLength), prefixLength, count));
+                        if (top.size() > n) {
+                            top.poll();
+                        }
+                    }
+                }
+                synchronized (candidates) {
+                    candidates.addAll(top);
+                }
+            });
+        }
+        TasksUtil.executeAndWait(tasks, rangesNumber, "prefix-popcount-");
+
+        candidates.sort(BY_COUNT_DESC);
+        return List.copyOf(candidates.subList(0, Math.min(n, candidates.size())));
+    }
+}
@@ -0,0 +1,335 @@
+package eta.ipaddrcounter.concurrency;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A compact file format for a set of unique integer values, e.g. the distinct IPs of a count, and set algebra
+ * on saved sets without the text they were counted from.
+ * <p>
+ * Like {@link AdaptiveUniqIntCounter} the 2^32 values are divided into 65,536 containers selected by the high 16 bits,
+ * and each non-empty container is written in its smallest representation: a sorted array of the low 16 bits,
+ * a list of runs or the 8 KB bitmap. The file is big-endian:
+ * <pre>
+ * int   magic "IPS1"
+ * int   number of containers
+ * long  number of values
+ * per container, in ascending order of the high bits:
+ *   char high bits, byte type
+ *   ARRAY:  char size - 1, size chars
+ *   RUNS:   char runs - 1, runs pairs of chars (start, length - 1)
+ *   BITMAP: 1024 longs
+ * </pre>
+ * Set operations load the first set into a {@link UniqIntBitmap} and merge the other sets into it container
+ * by container: each container is expanded to 1024 words and combined with the bitmap word by word.
+ */
+public final class UniqIntSetFile {
+    private static final int MAGIC = 0x49505331; // "IPS1"
+    private static final int CONTAINERS_NUMBER = 1 << 16;
+    private static final int CONTAINER_WORDS = (1 << 16) / 64;
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int MAX_RUNS = 2048;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final byte ARRAY = 0;
+    private static final byte RUNS = 1;
+    private static final byte BITMAP = 2;
+
+    /**
+     * An operation that combines a saved set into a bitmap.
+     */
+    public enum Operation {
+        /**
+         * Keeps the values that are in the bitmap or in the set.
+         */
+        UNION {
+            @Override
+            long apply(long target, long source) {
+                return target | source;
+            }
+        },
+        /**
+         * Keeps the values that are in the bitmap and in the set.
+         */
+        INTERSECT {
+            @Override
+            long apply(long target, long source) {
+                return target & source;
+            }
+        },
+        /**
+         * Keeps the values of the bitmap that are not in the set.
+         */
+        DIFFERENCE {
+            @Override
+            long apply(long target, long source) {
+                return target & ~source;
+            }
+        };
+
+        abstract long apply(long target, long source);
+    }
+
+    private UniqIntSetFile() {
+    }
+
+    /**
+     * Writes the values of the counter to the file.
+     *
+     * @return the number of values written
+     */
+    public static long write(UniqIntThreadSafeCounter counter, Path file) {
+        return write(counter::getWord, file);
+    }
+
+    /**
+     * Writes the values of the bitmap to the file.
+     *
+     * @return the number of values written
+     */
+    public static long write(UniqIntBitmap bitmap, Path file) {
+        return write(bitmap::getWord, file);
+    }
+
+    /**
+     * Reads the set into a new bitmap.
+     */
+    public static UniqIntBitmap read(Path file) {
+        UniqIntBitmap bitmap = new UniqIntBitmap();
+        combine(bitmap, file, Operation.UNION);
+        return bitmap;
+    }
+
+    /**
+     * Returns whether the file starts like a set file.
+     */
+    public static boolean isSetFile(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the number of values in the set, from the header.
+     */
+    public static long readCardinality(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 16))) {
+            readHeaderContainers(in, file);
+            return in.readLong();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Combines the set into the bitmap with the given operation, replacing the bitmap contents with the result.
+     */
+    public static void combine(UniqIntBitmap bitmap, Path file, Operation operation) {
+        long[] words = bitmap.words();
+        long[] container = new long[CONTAINER_WORDS];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            int containers = readHeaderContainers(in, file);
+            in.readLong();
+            int nextHigh = 0;
+            for (int i = 0; i < containers; i++) {
+                int high = in.readChar();
+                if (high < nextHigh) throw new IllegalArgumentException("Containers are not sorted: " + file);
+                // containers missing from the set are empty
+                for (; nextHigh < high; nextHigh++) {
+                    applyEmpty(words, nextHigh, operation);
+                }
+                readContainer(in, container, file);
+                int base = high * CONTAINER_WORDS;
+                for (int w = 0; w < CONTAINER_WORDS; w++) {
+                    words[base + w] = operation.apply(words[base + w], container[w]);
+                }
+                nextHigh = high + 1;
+            }
+            for (; nextHigh < CONTAINERS_NUMBER; nextHigh++) {
+                applyEmpty(words, nextHigh, operation);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void applyEmpty(long[] words, int high, Operation operation) {
+        if (operation == Operation.INTERSECT) {
+            Arrays.fill(words, high * CONTAINER_WORDS, (high + 1) * CONTAINER_WORDS, 0);
+        }
+    }
+
+    private static long write(WordSource source, Path file) {
+        long[] container = new long[CONTAINER_WORDS];
+        int containers = 0;
+        long cardinality = 0;
+        for (int high = 0; high < CONTAINERS_NUMBER; high++) {
+            int count = copyContainer(source, high, container);
+            if (count > 0) {
+                containers++;
+                cardinality += count;
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(containers);
+            out.writeLong(cardinality);
+            for (int high = 0; high < CONTAINERS_NUMBER; high++) {
+                int count = copyContainer(source, high, container);
+                if (count > 0) {
+                    out.writeChar(high);
+                    writeContainer(out, container, count);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return cardinality;
+    }
+
+    private static int copyContainer(WordSource source, int high, long[] container) {
+        int base = high * CONTAINER_WORDS;
+        int count = 0;
+        for (int w = 0; w < CONTAINER_WORDS; w++) {
+            long word = source.get(base + w);
+            container[w] = word;
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static void writeContainer(DataOutputStream out, long[] container, int count) throws IOException {
+        int runs = countRuns(container);
+        if (count <= MAX_ARRAY_SIZE && count <= 2 * runs) {
+            out.writeByte(ARRAY);
+            out.writeChar(count - 1);
+            for (int w = 0; w < CONTAINER_WORDS; w++) {
+                for (long word = container[w]; word != 0; word &= word - 1) {
+                    out.writeChar(w * 64 + Long.numberOfTrailingZeros(word));
+                }
+            }
+        } else if (runs < MAX_RUNS) {
+            out.writeByte(RUNS);
+            out.writeChar(runs - 1);
+            for (int start = nextSetBit(container, 0); start >= 0; ) {
+                int end = nextClearBit(container, start);
+                out.writeChar(start);
+                out.writeChar(end - start - 1);
+                start = nextSetBit(container, end);
+            }
+        } else {
+            out.writeByte(BITMAP);
+            for (long word : container) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    private static void readContainer(DataInputStream in, long[] container, Path file) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ARRAY -> {
+                Arrays.fill(container, 0);
+                int size = in.readChar() + 1;
+                for (int i = 0; i < size; i++) {
+                    int value = in.readChar();
+                    container[value >>> 6] |= 1L << value;
+                }
+            }
+            case RUNS -> {
+                Arrays.fill(container, 0);
+                int runs = in.readChar() + 1;
+                for (int i = 0; i < runs; i++) {
+                    int start = in.readChar();
+                    int end = start + in.readChar() + 1;
+                    if (end > 1 << 16) throw new IllegalArgumentException("Run exceeds its container: " + file);
+                    setRange(container, start, end);
+                }
+            }
+            case BITMAP -> {
+                for (int w = 0; w < CONTAINER_WORDS; w++) {
+                    container[w] = in.readLong();
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown container type " + type + ": " + file);
+        }
+    }
+
+    private static int readHeaderContainers(DataInputStream in, Path file) throws IOException {
+        if (in.readInt() != MAGIC) throw new IllegalArgumentException("Not a set file: " + file);
+        int containers = in.readInt();
+        if (containers < 0 || containers > CONTAINERS_NUMBER)
+            throw new IllegalArgumentException("Invalid number of containers: " + file);
+        return containers;
+    }
+
+    private static int countRuns(long[] container) {
+        int runs = 0;
+        long previousWord = 0;
+        for (long word : container) {
+            runs += Long.bitCount(word & ~((word << 1) | (previousWord >>> 63)));
+            previousWord = word;
+        }
+        return runs;
+    }
+
+    /**
+     * Returns the first set bit at or after {@code from}, or -1 if there is none.
+     */
+    private static int nextSetBit(long[] container, int from) {
+        if (from >= 1 << 16) return -1;
+        int w = from >>> 6;
+        long word = container[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == CONTAINER_WORDS) return -1;
+            word = container[w];
+        }
+        return w * 64 + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Returns the first clear bit at or after {@code from}, or 2^16 if there is none.
+     */
+    private static int nextClearBit(long[] container, int from) {
+        int w = from >>> 6;
+        long word = ~container[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == CONTAINER_WORDS) return 1 << 16;
+            word = ~container[w];
+        }
+        return w * 64 + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Sets the bits [from, to).
+     */
+    private static void setRange(long[] container, int from, int to) {
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (firstWord == lastWord) {
+            container[firstWord] |= firstMask & lastMask;
+            return;
+        }
+        container[firstWord] |= firstMask;
+        Arrays.fill(container, firstWord + 1, lastWord, -1L);
+        container[lastWord] |= lastMask;
+    }
+}
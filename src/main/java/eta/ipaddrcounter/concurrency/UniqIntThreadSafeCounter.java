@@ -1,23 +1,59 @@
 package eta.ipaddrcounter.concurrency;
 
-import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A thread-safe counter for tracking unique integer values.
  * It may also be used for counting IPv4 addresses since they can be easily converted to an int.
  * <p>
- * This class uses an {@code AtomicIntegerArray} as a bit set, where each bit corresponds
+ * This class uses a {@link BitmapStorage} of atomic longs as a bit set, where each bit corresponds
  * to one possible integer value. The counter supports adding integers and counting the total number
- * of unique values.
+ * of unique values. By default the storage is an {@code AtomicLongArray} on the heap ({@link HeapBitmapStorage}),
+ * {@link OffHeapBitmapStorage} keeps it in native memory.
  * <p>
- * The underlying array size is fixed at 2^27 integers, which is sufficient to represent all 2^32 possible
+ * The underlying array size is fixed at 2^26 longs, which is sufficient to represent all 2^32 possible
  * values (interpreted as unsigned 32-bit numbers).
+ * <p>
+ * Every CAS that sets bits also adds the number of newly set bits to a striped {@link LongAdder}, so
+ * {@link #getUniqCountAsLong()} is a live count that can be read at any time during a run, e.g. for progress
+ * reporting, without touching the bitmap. Only 0&rarr;1 transitions update it, so values that were seen before
+ * cost no extra write.
  * </p>
  */
-public class UniqIntThreadSafeCounter {
-    private static final int INT_SIZE = 32;
-    private static final int ARRAY_SIZE = 1 << 27; // 2^32 / 32
-    private final AtomicIntegerArray bits = new AtomicIntegerArray(ARRAY_SIZE);
+public class UniqIntThreadSafeCounter implements UniqIntCounter {
+    /**
+     * The number of 64-bit words the storage must have.
+     */
+    public static final int ARRAY_SIZE = 1 << 26; // 2^32 / 64
+    private static final int LONG_SIZE = 64;
+    private final BitmapStorage bits;
+    private final LongAdder uniqCount = new LongAdder();
+
+    /**
+     * Constructs a counter with its bitmap on the Java heap.
+     */
+    public UniqIntThreadSafeCounter() {
+        this(new HeapBitmapStorage(ARRAY_SIZE));
+    }
+
+    /**
+     * Constructs a counter on top of the given storage of {@link #ARRAY_SIZE} words.
+     * A storage that may already hold values, such as a saved {@link MappedBitmapStorage}, is popcounted once
+     * to initialize the live count. The storage is closed together with the counter.
+     */
+    public UniqIntThreadSafeCounter(BitmapStorage storage) {
+        if (storage.length() != ARRAY_SIZE)
+            throw new IllegalArgumentException("Storage must have " + ARRAY_SIZE + " words");
+        this.bits = storage;
+        if (!storage.isAllocatedZeroed()) {
+            uniqCount.add(popcount(storage));
+        }
+    }
 
     /**
      * Adds an integer to the counter.
@@ -26,29 +62,120 @@ public class UniqIntThreadSafeCounter {
      * to mark the presence of the value. If the value has already been added, this method has no effect.
      *
      * @param value the integer value to add
+     * @return true if the value had not been added before
      */
-    public void add(int value) {
+    @Override
+    public boolean add(int value) {
         long unsignedValue = value & 0xFFFFFFFFL;
-        int index = (int) (unsignedValue / INT_SIZE);
-        int mask = 1 << (unsignedValue % INT_SIZE);
-        int prev, next;
+        int index = (int) (unsignedValue / LONG_SIZE);
+        long mask = 1L << (unsignedValue % LONG_SIZE);
+        return orWord(index, mask) != 0;
+    }
+
+    /**
+     * Adds the first {@code length} integers of the array to the counter.
+     * <p>
+     * The values are sorted in place, so values that share a bitmap word become adjacent. Each word is then
+     * updated once with the OR of all their bits, instead of one CAS loop per value. Words that already
+     * contain all the bits are only read, which keeps hot cache lines shared between threads.
+     *
+     * @param values the integer values to add; the array is reordered
+     * @param length the number of values to add from the start of the array
+     */
+    @Override
+    public void addAll(int[] values, int length) {
+        Arrays.sort(values, 0, length);
+        int i = 0;
+        while (i < length) {
+            int index = (int) ((values[i] & 0xFFFFFFFFL) / LONG_SIZE);
+            long mask = 0;
+            do {
+                mask |= 1L << ((values[i] & 0xFFFFFFFFL) % LONG_SIZE);
+                i++;
+            } while (i < length && (int) ((values[i] & 0xFFFFFFFFL) / LONG_SIZE) == index);
+            orWord(index, mask);
+        }
+    }
+
+    /**
+     * ORs the mask into the word and adds the newly set bits to the live count.
+     *
+     * @return the number of bits the word did not have before
+     */
+    private int orWord(int index, long mask) {
+        long prev, next;
         do {
             prev = bits.get(index);
             next = prev | mask;
-            if (next == prev) return;
+            if (next == prev) return 0;
         } while (!bits.compareAndSet(index, prev, next));
+        int added = Long.bitCount(next & ~prev);
+        uniqCount.add(added);
+        return added;
     }
 
     /**
-     * Returns the total number of unique integer values that have been added.
+     * Returns the total number of unique integer values that have been added, from the live count.
+     * While other threads are adding values the result includes every value whose add has returned.
      *
-     * @return the count of unique values.
+     * @return the count of unique values, up to 2^32.
      */
-    public int getUniqCount() {
-        int count = 0;
-        for (int i = 0; i < bits.length(); i++) {
-            count += Integer.bitCount(bits.get(i));
+    @Override
+    public long getUniqCountAsLong() {
+        return uniqCount.sum();
+    }
+
+    /**
+     * Counts the unique values by popcounting the whole bitmap in parallel on all available processors.
+     * Equal to {@link #getUniqCountAsLong()} once no thread is adding values.
+     *
+     * @return the count of unique values, up to 2^32.
+     */
+    public long getUniqCountByPopcount() {
+        return popcount(bits);
+    }
+
+    private static long popcount(BitmapStorage bits) {
+        return TasksUtil.sumOverRanges(ARRAY_SIZE, Runtime.getRuntime().availableProcessors(), "counter-popcount-",
+                (from, to) -> {
+                    long count = 0;
+                    for (int i = from; i < to; i++) {
+                        count += Long.bitCount(bits.get(i));
+                    }
+                    return count;
+                });
+    }
+
+    /**
+     * Removes all values so that the counter can be reused, e.g. by a long-lived engine between jobs.
+     * The bitmap is zeroed in {@code parts} ranges in parallel on the given executor and the live count is reset
+     * when all ranges are done. No values may be added until the returned future completes.
+     *
+     * @param executor the executor that zeroes the ranges
+     * @param parts    the number of ranges
+     * @return a future that completes when the counter is empty
+     */
+    public CompletableFuture<Void> clearAsync(Executor executor, int parts) {
+        if (parts <= 0) throw new IllegalArgumentException("Parts must be greater than 0");
+        int rangeSize = (ARRAY_SIZE + parts - 1) / parts;
+        List<CompletableFuture<Void>> ranges = new ArrayList<>(parts);
+        for (int start = 0; start < ARRAY_SIZE; start += rangeSize) {
+            int from = start;
+            int to = Math.min(start + rangeSize, ARRAY_SIZE);
+            ranges.add(CompletableFuture.runAsync(() -> bits.clear(from, to), executor));
         }
-        return count;
+        return CompletableFuture.allOf(ranges.toArray(CompletableFuture[]::new)).thenRun(uniqCount::reset);
+    }
+
+    /**
+     * Returns the bitmap word of the values [index * 64, index * 64 + 64).
+     */
+    long getWord(int index) {
+        return bits.get(index);
+    }
+
+    @Override
+    public void close() {
+        bits.close();
     }
 }
@@ -0,0 +1,12 @@
+package eta.ipaddrcounter.concurrency;
+
+/**
+ * Read access to the 2^26 words of a full bitmap, e.g. {@link UniqIntThreadSafeCounter} or {@link UniqIntBitmap}.
+ */
+@FunctionalInterface
+interface WordSource {
+    /**
+     * Returns the word of the values [index * 64, index * 64 + 64).
+     */
+    long get(int index);
+}
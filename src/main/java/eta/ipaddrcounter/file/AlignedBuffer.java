@@ -0,0 +1,44 @@
+package eta.ipaddrcounter.file;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A native buffer at a block-aligned address for direct reads, see {@link DirectIo#allocateAligned(int, int)}.
+ * <p>
+ * The aligned buffer is a slice of a larger allocation. Closing frees that allocation at once, instead of leaving
+ * it to the garbage collector while it counts against {@code -XX:MaxDirectMemorySize}.
+ */
+public final class AlignedBuffer implements AutoCloseable {
+    private final ByteBuffer allocated;
+    private final ByteBuffer buffer;
+    private final int blockSize;
+
+    AlignedBuffer(ByteBuffer allocated, int blockSize) {
+        this.allocated = allocated;
+        this.buffer = allocated.alignedSlice(blockSize);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns the aligned buffer, whose capacity is a multiple of the block size.
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the block size the buffer is aligned to.
+     */
+    public int blockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Frees the native memory. The buffer must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        // invokeCleaner rejects slices, so the allocation itself is freed
+        DirectBuffers.free(allocated);
+    }
+}
@@ -1,6 +1,15 @@
 package eta.ipaddrcounter.file;
 
+import java.nio.ByteBuffer;
+
 public interface BytesParser {
     void parseBuffer(FastByteBuffer fastBuf);
+
+    /**
+     * Parses the bytes between the buffer's position and limit in place, without copying them to the heap.
+     * Used for memory-mapped windows of the input file. The buffer's position and limit are not changed.
+     */
+    void parseByteBuffer(ByteBuffer buf);
+
     void afterLastBuffer();
 }
@@ -0,0 +1,40 @@
+package eta.ipaddrcounter.file;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+/**
+ * Frees direct and mapped buffers without waiting for the garbage collector.
+ * <p>
+ * A bitmap buffer is hundreds of megabytes, so it must be released when its counter is closed. On Java 21 the
+ * supported way, a buffer of an {@code Arena} closed explicitly, still needs {@code --enable-preview}, so this
+ * class uses {@code sun.misc.Unsafe.invokeCleaner}.
+ * <p>
+ * This package holds the only two uses of JDK-internal API, and so the only "internal proprietary API" compiler
+ * warnings: {@code sun.misc.Unsafe} here and {@code com.sun.nio.file.ExtendedOpenOption.DIRECT} in
+ * {@link DirectIo#open}, which has no public replacement for {@code O_DIRECT}.
+ */
+public final class DirectBuffers {
+    private static final sun.misc.Unsafe UNSAFE = getUnsafe();
+
+    private DirectBuffers() {
+    }
+
+    /**
+     * Frees the native memory of a direct or mapped buffer. The buffer and its views must not be used afterwards.
+     * The buffer must be the one that was allocated or mapped, not a slice or duplicate of it.
+     */
+    public static void free(ByteBuffer buffer) {
+        UNSAFE.invokeCleaner(buffer);
+    }
+
+    private static sun.misc.Unsafe getUnsafe() {
+        try {
+            Field field = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (sun.misc.Unsafe) field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package eta.ipaddrcounter.file;
+
+import com.sun.nio.file.ExtendedOpenOption;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers for reading files with direct I/O ({@code O_DIRECT}), which bypasses the page cache:
+ * a one-shot scan of a huge file neither evicts other data from the cache nor pays for readahead and the
+ * kernel-to-user copy.
+ * <p>
+ * Direct reads must start at a block-aligned position, have a block-aligned length and go into a block-aligned
+ * native buffer. Chunk boundaries from {@link FileSplitter} are newline-aligned, not block-aligned, so readers
+ * read the enclosing aligned range and only parse the bytes of their chunk.
+ * If the file system does not support direct I/O (e.g. tmpfs), the file is opened for normal reads and the same
+ * aligned reads go through the page cache.
+ */
+public final class DirectIo {
+
+    private static final int DEF_BLOCK_SIZE = 4096;
+
+    private DirectIo() {
+    }
+
+    /**
+     * Returns the block size that direct reads of the file must be aligned to.
+     */
+    public static int blockSize(File file) {
+        try {
+            long blockSize = Files.getFileStore(file.toPath()).getBlockSize();
+            return blockSize > 0 && blockSize <= 1 << 20 && Long.bitCount(blockSize) == 1
+                    ? (int) blockSize : DEF_BLOCK_SIZE;
+        } catch (IOException | UnsupportedOperationException e) {
+            return DEF_BLOCK_SIZE;
+        }
+    }
+
+    /**
+     * Opens the file for direct reads, or for normal reads if the file system does not support direct I/O.
+     * {@code ExtendedOpenOption} is JDK-internal API, see {@link DirectBuffers}.
+     */
+    public static FileChannel open(File file) throws IOException {
+        try {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ, ExtendedOpenOption.DIRECT);
+        } catch (IOException | UnsupportedOperationException e) {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+    }
+
+    /**
+     * Allocates a native buffer of at least {@code size} bytes, rounded up to whole blocks, at a block-aligned address.
+     * The buffer must be closed when it is no longer used.
+     */
+    public static AlignedBuffer allocateAligned(int size, int blockSize) {
+        int alignedSize = (int) alignUp(Math.max(size, blockSize), blockSize);
+        return new AlignedBuffer(ByteBuffer.allocateDirect(alignedSize + blockSize), blockSize);
+    }
+
+    public static long alignDown(long position, int blockSize) {
+        return position & -blockSize;
+    }
+
+    public static long alignUp(long position, int blockSize) {
+        return (position + blockSize - 1) & -blockSize;
+    }
+
+    /**
+     * Reads the aligned range that starts at the block containing {@code position} into the buffer,
+     * as many whole blocks as fit.
+     *
+     * @return the offset of {@code position} in the buffer, the buffer limit is the number of bytes read
+     *         or -1 at the end of the file
+     */
+    public static int readAligned(FileChannel channel, ByteBuffer buffer, long position, int blockSize)
+            throws IOException {
+        long alignedPosition = alignDown(position, blockSize);
+        buffer.clear();
+        int bytesRead = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, alignedPosition + bytesRead);
+            if (n <= 0) {
+                break;
+            }
+            bytesRead += n;
+            if (bytesRead % blockSize != 0) {
+                // a short read only happens at the end of the file
+                break;
+            }
+        }
+        buffer.flip();
+        int offset = (int) (position - alignedPosition);
+        return bytesRead > offset ? offset : -1;
+    }
+}
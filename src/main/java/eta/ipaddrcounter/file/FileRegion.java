@@ -0,0 +1,10 @@
+package eta.ipaddrcounter.file;
+
+import java.io.File;
+
+/**
+ * A newline-aligned byte range [start, end) of one of several input files.
+ */
+public record FileRegion(File file, long start, long end) {
+
+}
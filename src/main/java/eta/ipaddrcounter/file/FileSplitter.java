@@ -2,12 +2,22 @@ package eta.ipaddrcounter.file;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public final class FileSplitter {
+    private static final int BOUNDARY_READ_SIZE = 4096;
+    private static final int BOUNDARIES_PER_TASK = 16;
 
     private FileSplitter() {
     }
@@ -20,34 +30,159 @@ public final class FileSplitter {
         }
     }
 
+    /**
+     * Splits several files into newline-aligned regions of roughly equal size, about {@code targetChunks} in total.
+     * Files smaller than the target region size become a single region, larger files are split with
+     * {@link #splitOnNewLineAlignedChunks(int, File, long)}. Empty files are skipped.
+     */
+    public static List<FileRegion> splitFilesOnNewLineAlignedChunks(int targetChunks, List<File> files, long minChunkSize) {
+        List<FileRegion> regions = new ArrayList<>(files.size());
+        for (File file : files) {
+            regions.add(new FileRegion(file, 0, file.length()));
+        }
+        return splitRegionsOnNewLineAlignedChunks(targetChunks, regions, minChunkSize);
+    }
+
+    /**
+     * Splits file regions that start at a line start into newline-aligned regions of roughly equal size,
+     * about {@code targetChunks} in total, like {@link #splitFilesOnNewLineAlignedChunks(int, List, long)}.
+     * Empty regions are skipped.
+     */
+    public static List<FileRegion> splitRegionsOnNewLineAlignedChunks(int targetChunks, List<FileRegion> regions,
+                                                                     long minChunkSize) {
+        long totalSize = regions.stream().mapToLong(region -> region.end() - region.start()).sum();
+        long targetChunkSize = Math.max(totalSize / targetChunks, minChunkSize);
+        List<FileRegion> chunks = new ArrayList<>();
+        for (FileRegion region : regions) {
+            long regionSize = region.end() - region.start();
+            if (regionSize <= 0) {
+                continue;
+            }
+            int regionChunks = (int) Math.min((regionSize + targetChunkSize - 1) / targetChunkSize, targetChunks);
+            try {
+                for (FileChunk chunk : getChunksInternal(regionChunks, region.file(), region.start(), region.end(),
+                        minChunkSize)) {
+                    chunks.add(new FileRegion(region.file(), chunk.start(), chunk.end()));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the position right after the last newline in [start, end) of the file,
+     * or {@code start} if the range contains no newline.
+     */
+    public static long findLastNewlineEnd(File file, long start, long end) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] buffer = new byte[64 * 1024];
+            long blockEnd = end;
+            while (blockEnd > start) {
+                int length = (int) Math.min(buffer.length, blockEnd - start);
+                long blockStart = blockEnd - length;
+                raf.seek(blockStart);
+                raf.readFully(buffer, 0, length);
+                for (int i = length - 1; i >= 0; i--) {
+                    if (buffer[i] == '\n') {
+                        return blockStart + i + 1;
+                    }
+                }
+                blockEnd = blockStart;
+            }
+            return start;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private static List<FileChunk> getChunksInternal(int targetChunks, File file, long minChunkSize) throws IOException {
-        List<FileChunk> chunks = new ArrayList<>();
         long fileSize = file.length();
         if (fileSize == 0) {
+            List<FileChunk> chunks = new ArrayList<>();
             chunks.add(new FileChunk(0, 0));
             return chunks;
         }
-        int actualChunks = getActualChunks(targetChunks, minChunkSize, fileSize);
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-            byte[] buffer = new byte[1024];
-            long approxChunkSize = fileSize / actualChunks;
-            long start = 0;
-            for (int i = 0; i < actualChunks - 1; i++) {
-                long approxEnd = start + approxChunkSize;
-                long adjustedEnd = findNextNewline(raf, approxEnd, buffer);
-                chunks.add(new FileChunk(start, adjustedEnd));
-                start = adjustedEnd;
-                if (start >= fileSize) {
-                    break;
-                }
+        return getChunksInternal(targetChunks, file, 0, fileSize, minChunkSize);
+    }
+
+    private static List<FileChunk> getChunksInternal(int targetChunks, File file, long from, long to,
+                                                     long minChunkSize) throws IOException {
+        long size = to - from;
+        int actualChunks = getActualChunks(targetChunks, minChunkSize, size);
+        long approxChunkSize = size / actualChunks;
+        // boundaries[i] is the end of chunk i - 1 and the start of chunk i
+        long[] boundaries = new long[actualChunks + 1];
+        boundaries[0] = from;
+        boundaries[actualChunks] = to;
+        if (actualChunks > 1) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                findBoundaries(channel, boundaries, from, approxChunkSize, to);
             }
-            if (start < fileSize) {
-                chunks.add(new FileChunk(start, fileSize));
+        }
+        List<FileChunk> chunks = new ArrayList<>(actualChunks);
+        long start = from;
+        for (int i = 1; i <= actualChunks; i++) {
+            // a line longer than a chunk moves several boundaries to the same newline
+            if (boundaries[i] > start) {
+                chunks.add(new FileChunk(start, boundaries[i]));
+                start = boundaries[i];
             }
         }
         return chunks;
     }
 
+    /**
+     * Moves every inner boundary from its approximate position {@code from + i * approxChunkSize} to the end of
+     * the line it falls into. The boundaries do not depend on each other, so more than
+     * {@value #BOUNDARIES_PER_TASK} of them are found in groups on virtual threads, with positional reads
+     * of the shared channel: on a network volume the latency of the reads overlaps instead of adding up.
+     */
+    private static void findBoundaries(FileChannel channel, long[] boundaries, long from, long approxChunkSize,
+                                       long to) throws IOException {
+        int last = boundaries.length - 1;
+        if (last - 1 <= BOUNDARIES_PER_TASK) {
+            findBoundaries(channel, boundaries, 1, last, from, approxChunkSize, to);
+            return;
+        }
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("splitter-v", 0).factory())) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int first = 1; first < last; first += BOUNDARIES_PER_TASK) {
+                int groupFirst = first;
+                int groupEnd = Math.min(first + BOUNDARIES_PER_TASK, last);
+                futures.add(executor.submit(() -> {
+                    findBoundaries(channel, boundaries, groupFirst, groupEnd, from, approxChunkSize, to);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new RuntimeException("Boundary search failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while searching chunk boundaries");
+        }
+    }
+
+    private static void findBoundaries(FileChannel channel, long[] boundaries, int first, int end, long from,
+                                       long approxChunkSize, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_READ_SIZE);
+        for (int i = first; i < end; i++) {
+            long approxEnd = from + i * approxChunkSize;
+            // the line found for the previous boundary may already cover this position
+            boundaries[i] = i > first && boundaries[i - 1] > approxEnd
+                    ? boundaries[i - 1]
+                    : findNextNewlineEnd(channel, approxEnd, to, buffer);
+        }
+    }
+
     private static int getActualChunks(int targetChunks, long minChunkSize, long fileSize) {
         int actualChunks = targetChunks;
         if (fileSize < targetChunks * minChunkSize) {
@@ -56,18 +191,26 @@ public final class FileSplitter {
         return Math.max(actualChunks, 1);
     }
 
-    private static long findNextNewline(RandomAccessFile raf, long pos, byte[] tempBuf) throws IOException {
-        raf.seek(pos);
-        long currentPos = pos;
-        int bytesRead;
-        while ((bytesRead = raf.read(tempBuf)) != -1) {
+    /**
+     * Returns the position right after the first newline in [pos, to), or {@code to} if there is none.
+     */
+    private static long findNextNewlineEnd(FileChannel channel, long pos, long to, ByteBuffer buffer)
+            throws IOException {
+        byte[] array = buffer.array();
+        long position = pos;
+        while (position < to) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), to - position));
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead <= 0) {
+                break;
+            }
             for (int i = 0; i < bytesRead; i++) {
-                currentPos++;
-                if (tempBuf[i] == '\n') {
-                    return currentPos;
+                if (array[i] == '\n') {
+                    return position + i + 1;
                 }
             }
+            position += bytesRead;
         }
-        return currentPos;
+        return to;
     }
 }
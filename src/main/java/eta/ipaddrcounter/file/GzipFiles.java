@@ -0,0 +1,127 @@
+package eta.ipaddrcounter.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Splits gzip files into regions that can be decompressed in parallel.
+ * <p>
+ * Gzip members do not record their compressed size, so in general a member boundary is only known after
+ * the previous member has been inflated. BGZF files (block gzip, as written by {@code bgzip}) store the size
+ * of every member in a header extra field and its decompressed size in the trailer, so their members can be
+ * grouped into regions without decompressing anything. Other gzip files are decompressed as a single region.
+ */
+public final class GzipFiles {
+
+    private static final int HEADER_SIZE = 18;
+    private static final int TRAILER_SIZE = 8;
+    private static final int INFLATE_BUFFER_SIZE = 64 * 1024;
+
+    private GzipFiles() {
+    }
+
+    /**
+     * Checks the gzip magic number at the start of the file.
+     */
+    public static boolean isGzip(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.length() >= 2 && raf.read() == 0x1f && raf.read() == 0x8b;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Splits a gzip file into about {@code targetRegions} regions of consecutive BGZF blocks,
+     * or returns a single region if the file is not a BGZF file.
+     */
+    public static List<GzipRegion> splitOnRegions(int targetRegions, File file) {
+        List<long[]> blocks;
+        try {
+            blocks = readBgzfBlocks(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (blocks.isEmpty()) {
+            return List.of(new GzipRegion(file, 0, Long.MAX_VALUE, true));
+        }
+
+        int blocksPerRegion = (blocks.size() + targetRegions - 1) / targetRegions;
+        List<GzipRegion> regions = new ArrayList<>();
+        for (int from = 0; from < blocks.size(); from += blocksPerRegion) {
+            int to = Math.min(from + blocksPerRegion, blocks.size());
+            long uncompressedSize = Long.MAX_VALUE;
+            if (to < blocks.size()) {
+                uncompressedSize = 0;
+                for (int i = from; i < to; i++) {
+                    uncompressedSize += blocks.get(i)[1];
+                }
+            }
+            regions.add(new GzipRegion(file, blocks.get(from)[0], uncompressedSize, from == 0));
+        }
+        return regions;
+    }
+
+    /**
+     * Opens the decompressed lines owned by the region. Members after the region are only inflated
+     * as far as needed to complete its last line.
+     */
+    public static InputStream open(GzipRegion region) throws IOException {
+        FileChannel channel = FileChannel.open(region.file().toPath(), StandardOpenOption.READ);
+        try {
+            channel.position(region.start());
+            InputStream decompressed = new GZIPInputStream(Channels.newInputStream(channel), INFLATE_BUFFER_SIZE);
+            return new OwnedLinesInputStream(decompressed, !region.first(), region.uncompressedSize());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the offset and the decompressed size of every block, or an empty list if the file is not a BGZF file.
+     */
+    private static List<long[]> readBgzfBlocks(File file) throws IOException {
+        List<long[]> blocks = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long fileSize = raf.length();
+            byte[] header = new byte[HEADER_SIZE];
+            long offset = 0;
+            while (offset < fileSize) {
+                if (fileSize - offset < HEADER_SIZE + TRAILER_SIZE) {
+                    return List.of();
+                }
+                raf.seek(offset);
+                raf.readFully(header);
+                if (!isBgzfHeader(header)) {
+                    return List.of();
+                }
+                int blockSize = (header[16] & 0xFF | (header[17] & 0xFF) << 8) + 1;
+                if (blockSize < HEADER_SIZE + TRAILER_SIZE || offset + blockSize > fileSize) {
+                    return List.of();
+                }
+                raf.seek(offset + blockSize - 4);
+                long uncompressedSize = Integer.toUnsignedLong(Integer.reverseBytes(raf.readInt()));
+                blocks.add(new long[]{offset, uncompressedSize});
+                offset += blockSize;
+            }
+        }
+        return blocks;
+    }
+
+    private static boolean isBgzfHeader(byte[] header) {
+        return header[0] == (byte) 0x1f && header[1] == (byte) 0x8b && header[2] == 8 // deflate
+               && (header[3] & 4) != 0 // FEXTRA
+               && header[10] == 6 && header[11] == 0 // XLEN
+               && header[12] == 'B' && header[13] == 'C' && header[14] == 2 && header[15] == 0;
+    }
+}
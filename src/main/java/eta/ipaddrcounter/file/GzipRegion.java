@@ -0,0 +1,17 @@
+package eta.ipaddrcounter.file;
+
+import java.io.File;
+
+/**
+ * A run of gzip members of a file that is decompressed by one thread.
+ * The region owns the lines that start in the first {@code uncompressedSize} decompressed bytes;
+ * a region that is not the first one skips the line it starts in, which belongs to the previous region.
+ *
+ * @param file             the compressed file
+ * @param start            the offset of the first member in the compressed file
+ * @param uncompressedSize the decompressed size of the region's members, or {@code Long.MAX_VALUE} for the last region
+ * @param first            whether this is the first region of the file
+ */
+public record GzipRegion(File file, long start, long uncompressedSize, boolean first) {
+
+}
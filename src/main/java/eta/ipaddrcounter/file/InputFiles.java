@@ -0,0 +1,133 @@
+package eta.ipaddrcounter.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Turns the input arguments of a run (files, directories and glob patterns) into the list of files to read.
+ */
+public final class InputFiles {
+
+    private static final String GLOB_CHARS = "*?[{";
+
+    private InputFiles() {
+    }
+
+    /**
+     * Resolves a path or a glob pattern such as {@code logs/access-*.log} or {@code logs/**.log}.
+     * A string without glob characters is returned as a single path, even if it does not exist.
+     *
+     * @param pathOrGlob the path or the glob pattern
+     * @return the matching paths sorted by name, or the path itself
+     * @throws IllegalArgumentException if the glob pattern does not match any file
+     */
+    public static List<Path> resolve(String pathOrGlob) {
+        if (pathOrGlob == null) throw new IllegalArgumentException("Path must not be null");
+        int firstGlobChar = indexOfGlobChar(pathOrGlob);
+        if (firstGlobChar < 0) {
+            return List.of(Path.of(pathOrGlob));
+        }
+
+        // walk from the deepest directory without glob characters
+        int separator = Math.max(pathOrGlob.lastIndexOf('/', firstGlobChar),
+                pathOrGlob.lastIndexOf(File.separatorChar, firstGlobChar));
+        Path base = separator < 0 ? Path.of("") : Path.of(pathOrGlob.substring(0, separator + 1));
+        String pattern = separator < 0 ? pathOrGlob : pathOrGlob.substring(separator + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        int maxDepth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("/").length;
+
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(base.toAbsolutePath(), maxDepth)) {
+            Path absoluteBase = base.toAbsolutePath();
+            paths = walk.filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(absoluteBase.relativize(path)))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("No files match: " + pathOrGlob);
+        }
+        return paths;
+    }
+
+    /**
+     * Validates the given paths and expands directories into the regular files they contain (not recursively).
+     *
+     * @param paths the files and directories to read
+     * @return the files to read, directory contents sorted by name
+     * @throws IllegalArgumentException if a path is not accessible or there are no files to read
+     */
+    public static List<File> toFiles(List<Path> paths) {
+        if (paths == null) throw new IllegalArgumentException("Paths must not be null");
+        List<File> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (path == null) throw new IllegalArgumentException("Path must not be null");
+            File file = path.toFile();
+            if (!file.exists())
+                throw new IllegalArgumentException("File does not exist: " + file.getAbsolutePath());
+            if (file.isDirectory()) {
+                files.addAll(listFiles(path));
+                continue;
+            }
+            files.add(checkedFile(file));
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No input files: " + paths);
+        }
+        return files;
+    }
+
+    /**
+     * Like {@link #toFiles(List)}, for counters that read the raw file bytes and cannot decompress gzip files.
+     *
+     * @throws IllegalArgumentException if a path is not accessible, there are no files to read or a file is compressed
+     */
+    public static List<File> toUncompressedFiles(List<Path> paths) {
+        List<File> files = toFiles(paths);
+        for (File file : files) {
+            if (GzipFiles.isGzip(file))
+                throw new IllegalArgumentException("Gzip input is only supported by IOSeparateIPv4UniqCounter: "
+                                                   + file.getAbsolutePath());
+        }
+        return files;
+    }
+
+    private static List<File> listFiles(Path directory) {
+        try (Stream<Path> list = Files.list(directory)) {
+            return list.filter(Files::isRegularFile)
+                    .sorted(Comparator.naturalOrder())
+                    .map(path -> checkedFile(path.toFile()))
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static File checkedFile(File file) {
+        if (!file.isFile())
+            throw new IllegalArgumentException("Not a valid file: " + file.getAbsolutePath());
+        if (!file.canRead())
+            throw new IllegalArgumentException("File is not readable: " + file.getAbsolutePath());
+        return file;
+    }
+
+    private static int indexOfGlobChar(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if (GLOB_CHARS.indexOf(path.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,86 @@
+package eta.ipaddrcounter.file;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Passes through the lines that start in the first {@code ownedSize} bytes of the stream, the same rule
+ * {@link FileSplitter} uses for file chunks: the partial first line is dropped if {@code skipFirstLine} is set,
+ * and the line that is still open at {@code ownedSize} is read to its end.
+ */
+class OwnedLinesInputStream extends FilterInputStream {
+    private final long ownedSize;
+    private boolean skipping;
+    private boolean finished;
+    private long position;
+
+    OwnedLinesInputStream(InputStream in, boolean skipFirstLine, long ownedSize) {
+        super(in);
+        this.skipping = skipFirstLine;
+        this.ownedSize = ownedSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (!finished) {
+            int n = in.read(b, off, len);
+            if (n == -1) {
+                finished = true;
+                break;
+            }
+            long start = position;
+            position += n;
+            int from = 0;
+            if (skipping) {
+                int newline = indexOfNewline(b, off, off + n);
+                if (newline < 0) {
+                    continue;
+                }
+                skipping = false;
+                if (start + newline - off >= ownedSize) {
+                    // the skipped line covers the whole owned range
+                    finished = true;
+                    break;
+                }
+                from = newline + 1 - off;
+            }
+            int to = n;
+            if (position > ownedSize) {
+                // the owned range ends in this read, keep everything up to the first newline at or after it
+                int searchFrom = (int) Math.max(from, ownedSize - start);
+                int newline = indexOfNewline(b, off + searchFrom, off + n);
+                if (newline >= 0) {
+                    to = newline + 1 - off;
+                    finished = true;
+                }
+            }
+            if (from > 0) {
+                System.arraycopy(b, off + from, b, off, to - from);
+            }
+            if (to > from) {
+                return to - from;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOfNewline(byte[] b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,13 +1,17 @@
 package eta.ipaddrcounter.task;
 
 import eta.ipaddrcounter.concurrency.ThreadWasInterrupted;
+import eta.ipaddrcounter.file.AlignedBuffer;
 import eta.ipaddrcounter.file.BytesParser;
+import eta.ipaddrcounter.file.DirectIo;
 import eta.ipaddrcounter.file.FastByteBuffer;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 public class FileChunkProcessor implements Runnable {
 
@@ -16,22 +20,53 @@ public class FileChunkProcessor implements Runnable {
     private final long endOffset;
     private final BytesParser parser;
     private final int bufferSize;
+    private final FastByteBuffer buffer;
+    private final AlignedBuffer directBuffer;
 
     public FileChunkProcessor(File file, long startOffset, long endOffset,
                               BytesParser parser, int bufferSize) {
+        this(file, startOffset, endOffset, parser, bufferSize, null, null);
+    }
+
+    /**
+     * Creates a processor that reads into the given buffer, so a thread processing many chunks allocates it once.
+     */
+    public FileChunkProcessor(File file, long startOffset, long endOffset,
+                              BytesParser parser, FastByteBuffer buffer) {
+        this(file, startOffset, endOffset, parser, buffer.capacity, buffer, null);
+    }
+
+    /**
+     * Creates a processor that reads the chunk with direct I/O into the given native buffer and parses the bytes
+     * in place. The buffer must be allocated with the block size of the file, see {@link DirectIo#blockSize(File)},
+     * and is not closed by the processor, so a worker processing many chunks allocates it once.
+     */
+    public FileChunkProcessor(File file, long startOffset, long endOffset,
+                              BytesParser parser, AlignedBuffer directBuffer) {
+        this(file, startOffset, endOffset, parser, directBuffer.buffer().capacity(), null, directBuffer);
+    }
+
+    private FileChunkProcessor(File file, long startOffset, long endOffset, BytesParser parser, int bufferSize,
+                               FastByteBuffer buffer, AlignedBuffer directBuffer) {
         this.file = file;
         this.startOffset = startOffset;
         this.endOffset = endOffset;
         this.parser = parser;
         this.bufferSize = bufferSize;
+        this.buffer = buffer;
+        this.directBuffer = directBuffer;
     }
 
     @Override
     public void run() {
+        if (directBuffer != null) {
+            runDirect();
+            return;
+        }
         try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
             raf.seek(startOffset);
-            byte[] buf = new byte[bufferSize];
-            FastByteBuffer fastBuf = new FastByteBuffer(buf);
+            FastByteBuffer fastBuf = buffer != null ? buffer : new FastByteBuffer(new byte[bufferSize]);
+            byte[] buf = fastBuf.array;
             long currentPos = startOffset;
             while (currentPos < endOffset) {
                 if (Thread.currentThread().isInterrupted()) {
@@ -52,4 +87,29 @@ public class FileChunkProcessor implements Runnable {
             throw new UncheckedIOException(e);
         }
     }
+
+    private void runDirect() {
+        ByteBuffer buf = directBuffer.buffer();
+        int blockSize = directBuffer.blockSize();
+        try (FileChannel channel = DirectIo.open(file)) {
+            long currentPos = startOffset;
+            while (currentPos < endOffset) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new ThreadWasInterrupted();
+                }
+
+                int offset = DirectIo.readAligned(channel, buf, currentPos, blockSize);
+                if (offset == -1) {
+                    break;
+                }
+                int end = (int) Math.min(buf.limit(), offset + (endOffset - currentPos));
+                buf.limit(end).position(offset);
+                parser.parseByteBuffer(buf);
+                currentPos += end - offset;
+            }
+            parser.afterLastBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
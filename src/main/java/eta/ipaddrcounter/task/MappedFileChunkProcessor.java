@@ -0,0 +1,71 @@
+package eta.ipaddrcounter.task;
+
+import eta.ipaddrcounter.concurrency.ThreadWasInterrupted;
+import eta.ipaddrcounter.file.BytesParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Processes a file chunk by memory-mapping it and parsing the mapped bytes in place.
+ * <p>
+ * A single mapping is limited to {@code Integer.MAX_VALUE} bytes, so chunks are mapped window by window.
+ * Windows do not need to be newline-aligned: the parser keeps its state between calls.
+ * Each window is handed to the parser in slices of {@code sliceSize} bytes so that interruption is noticed promptly.
+ */
+public class MappedFileChunkProcessor implements Runnable {
+
+    private final File file;
+    private final long startOffset;
+    private final long endOffset;
+    private final BytesParser parser;
+    private final long windowSize;
+    private final int sliceSize;
+
+    public MappedFileChunkProcessor(File file, long startOffset, long endOffset,
+                                    BytesParser parser, long windowSize, int sliceSize) {
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Window size must be in range (0, Integer.MAX_VALUE]");
+        if (sliceSize <= 0) throw new IllegalArgumentException("Slice size must be greater than 0");
+        this.file = file;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.parser = parser;
+        this.windowSize = windowSize;
+        this.sliceSize = sliceSize;
+    }
+
+    @Override
+    public void run() {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long currentPos = startOffset;
+            while (currentPos < endOffset) {
+                int windowLength = (int) Math.min(windowSize, endOffset - currentPos);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, currentPos, windowLength);
+                parseWindow(window, windowLength);
+                currentPos += windowLength;
+            }
+            parser.afterLastBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void parseWindow(MappedByteBuffer window, int windowLength) {
+        int slicePos = 0;
+        while (slicePos < windowLength) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new ThreadWasInterrupted();
+            }
+
+            int sliceEnd = (int) Math.min((long) slicePos + sliceSize, windowLength);
+            window.limit(sliceEnd).position(slicePos);
+            parser.parseByteBuffer(window);
+            slicePos = sliceEnd;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package eta.ipaddrcounter.task;
+
+import eta.ipaddrcounter.concurrency.ThreadWasInterrupted;
+import eta.ipaddrcounter.file.AlignedBuffer;
+import eta.ipaddrcounter.file.BytesParser;
+import eta.ipaddrcounter.file.DirectIo;
+import eta.ipaddrcounter.file.FastByteBuffer;
+import eta.ipaddrcounter.file.FileRegion;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A worker that keeps taking the next unprocessed region from a shared list until none are left.
+ * <p>
+ * All workers share the list and the cursor, so a worker that is slowed down (a busy core, page-cache misses)
+ * simply takes fewer regions and nobody idles while work remains. The regions are independent, so a shared
+ * atomic cursor balances the load like work stealing, without per-worker deques.
+ * The parser and the read buffer are reused for every region of the worker.
+ */
+public class WorkUnitsProcessor implements Runnable {
+
+    private final List<FileRegion> units;
+    private final AtomicInteger nextUnit;
+    private final BytesParser parser;
+    private final int bufferSize;
+    private final boolean directIo;
+    private final FastByteBuffer buffer;
+
+    /**
+     * @param units      the regions to process, shared by all workers
+     * @param nextUnit   the index of the next region to take, shared by all workers
+     * @param parser     the parser of this worker
+     * @param bufferSize the size of the read buffer in bytes
+     */
+    public WorkUnitsProcessor(List<FileRegion> units, AtomicInteger nextUnit, BytesParser parser, int bufferSize) {
+        this(units, nextUnit, parser, bufferSize, false);
+    }
+
+    /**
+     * @param units      the regions to process, shared by all workers
+     * @param nextUnit   the index of the next region to take, shared by all workers
+     * @param parser     the parser of this worker
+     * @param bufferSize the size of the read buffer in bytes
+     * @param directIo   whether the regions are read with direct I/O into an aligned native buffer
+     */
+    public WorkUnitsProcessor(List<FileRegion> units, AtomicInteger nextUnit, BytesParser parser, int bufferSize,
+                              boolean directIo) {
+        this(units, nextUnit, parser, bufferSize, directIo, null);
+    }
+
+    /**
+     * @param units    the regions to process, shared by all workers
+     * @param nextUnit the index of the next region to take, shared by all workers
+     * @param parser   the parser of this worker
+     * @param buffer   the read buffer, e.g. one kept by a long-lived thread across runs
+     */
+    public WorkUnitsProcessor(List<FileRegion> units, AtomicInteger nextUnit, BytesParser parser,
+                              FastByteBuffer buffer) {
+        this(units, nextUnit, parser, buffer.capacity, false, buffer);
+    }
+
+    private WorkUnitsProcessor(List<FileRegion> units, AtomicInteger nextUnit, BytesParser parser, int bufferSize,
+                               boolean directIo, FastByteBuffer buffer) {
+        this.units = units;
+        this.nextUnit = nextUnit;
+        this.parser = parser;
+        this.bufferSize = bufferSize;
+        this.directIo = directIo;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void run() {
+        FastByteBuffer buffer = this.buffer;
+        // one native buffer per block size, usually just one, freed when the worker is done
+        Map<Integer, AlignedBuffer> directBuffers = new HashMap<>();
+        // the units of a file are usually consecutive, so its block size is looked up once per file
+        File blockSizeFile = null;
+        int blockSize = 0;
+        try {
+            int index;
+            while ((index = nextUnit.getAndIncrement()) < units.size()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new ThreadWasInterrupted();
+                }
+                FileRegion unit = units.get(index);
+                if (directIo) {
+                    if (!unit.file().equals(blockSizeFile)) {
+                        blockSizeFile = unit.file();
+                        blockSize = DirectIo.blockSize(blockSizeFile);
+                    }
+                    AlignedBuffer directBuffer = directBuffers.computeIfAbsent(blockSize,
+                            size -> DirectIo.allocateAligned(bufferSize, size));
+                    new FileChunkProcessor(unit.file(), unit.start(), unit.end(), parser, directBuffer).run();
+                } else {
+                    if (buffer == null) {
+                        buffer = new FastByteBuffer(new byte[bufferSize]);
+                    }
+                    new FileChunkProcessor(unit.file(), unit.start(), unit.end(), parser, buffer).run();
+                }
+            }
+        } finally {
+            for (AlignedBuffer directBuffer : directBuffers.values()) {
+                directBuffer.close();
+            }
+        }
+    }
+}
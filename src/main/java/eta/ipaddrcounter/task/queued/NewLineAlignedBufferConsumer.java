@@ -1,20 +1,19 @@
 package eta.ipaddrcounter.task.queued;
 
+import eta.ipaddrcounter.concurrency.RingBufferQueue;
 import eta.ipaddrcounter.concurrency.ThreadWasInterrupted;
 import eta.ipaddrcounter.file.BytesParser;
 import eta.ipaddrcounter.file.FastByteBuffer;
 import eta.ipaddrcounter.task.FileChunkProcessor;
 
-import java.util.concurrent.BlockingQueue;
-
 
 public class NewLineAlignedBufferConsumer implements Runnable {
-    private final BlockingQueue<FastByteBuffer> freeBuffers;
-    private final BlockingQueue<FastByteBuffer> workQueue;
+    private final RingBufferQueue<FastByteBuffer> freeBuffers;
+    private final RingBufferQueue<FastByteBuffer> workQueue;
     private final BytesParser parser;
 
-    public NewLineAlignedBufferConsumer(BlockingQueue<FastByteBuffer> freeBuffers,
-                                        BlockingQueue<FastByteBuffer> workQueue,
+    public NewLineAlignedBufferConsumer(RingBufferQueue<FastByteBuffer> freeBuffers,
+                                        RingBufferQueue<FastByteBuffer> workQueue,
                                         BytesParser parser) {
         this.freeBuffers = freeBuffers;
         this.workQueue = workQueue;
@@ -1,35 +1,106 @@
 package eta.ipaddrcounter.task.queued;
 
+import eta.ipaddrcounter.file.AlignedBuffer;
+import eta.ipaddrcounter.file.DirectIo;
 import eta.ipaddrcounter.file.FastByteBuffer;
+import eta.ipaddrcounter.concurrency.RingBufferQueue;
 import eta.ipaddrcounter.concurrency.ThreadWasInterrupted;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.io.UncheckedIOException;
-import java.util.concurrent.BlockingQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Reads a newline-aligned byte range of a file, or a whole stream, into free buffers and puts them on the work queue.
+ * Every buffer ends with a newline. A file range is re-read from the start of the partial last line of a buffer;
+ * for a stream that cannot be split or re-read (stdin, a pipe or a decompressor), the bytes after the last newline
+ * are carried over to the next buffer instead, so it can be read by a single producer.
+ */
 public class NewLineAlignedBufferProducer implements Runnable {
 
     public static final FastByteBuffer POISON_PILL = new FastByteBuffer(new byte[0]);
 
     private final File file;
+    private final ReadableByteChannel channel;
+    private final InputOpener opener;
+    private final boolean directIo;
     private final long startOffset;
     private final long endOffset;
-    private final BlockingQueue<FastByteBuffer> freeBuffers;
-    private final BlockingQueue<FastByteBuffer> workQueue;
+    private final RingBufferQueue<FastByteBuffer> freeBuffers;
+    private final RingBufferQueue<FastByteBuffer> workQueue;
     private final AtomicLong fileReadersCounter;
     private final int bufferSize;
     private final int consumersNumber;
 
     public NewLineAlignedBufferProducer(File file, long startOffset, long endOffset,
-                                        BlockingQueue<FastByteBuffer> freeBuffers,
-                                        BlockingQueue<FastByteBuffer> workQueue,
+                                        RingBufferQueue<FastByteBuffer> freeBuffers,
+                                        RingBufferQueue<FastByteBuffer> workQueue,
                                         AtomicLong fileReadersCounter,
                                         int consumersNumber,
                                         int bufferSize) {
+        this(file, startOffset, endOffset, freeBuffers, workQueue, fileReadersCounter, consumersNumber, bufferSize,
+                false);
+    }
+
+    /**
+     * Creates a producer that reads the file range, with direct I/O (bypassing the page cache) if {@code directIo}
+     * is set, see {@link DirectIo}.
+     */
+    public NewLineAlignedBufferProducer(File file, long startOffset, long endOffset,
+                                        RingBufferQueue<FastByteBuffer> freeBuffers,
+                                        RingBufferQueue<FastByteBuffer> workQueue,
+                                        AtomicLong fileReadersCounter,
+                                        int consumersNumber,
+                                        int bufferSize,
+                                        boolean directIo) {
+        this(file, null, null, directIo, startOffset, endOffset, freeBuffers, workQueue, fileReadersCounter,
+                consumersNumber, bufferSize);
+    }
+
+    /**
+     * Creates a producer that reads the channel until its end. The channel is not closed by the producer.
+     */
+    public NewLineAlignedBufferProducer(ReadableByteChannel channel,
+                                        RingBufferQueue<FastByteBuffer> freeBuffers,
+                                        RingBufferQueue<FastByteBuffer> workQueue,
+                                        AtomicLong fileReadersCounter,
+                                        int consumersNumber,
+                                        int bufferSize) {
+        this(null, channel, null, false, 0, Long.MAX_VALUE, freeBuffers, workQueue, fileReadersCounter, consumersNumber,
+                bufferSize);
+    }
+
+    /**
+     * Creates a producer that opens a stream when it runs, e.g. a decompressing one, and reads it until its end.
+     * The stream is closed by the producer.
+     */
+    public NewLineAlignedBufferProducer(InputOpener opener,
+                                        RingBufferQueue<FastByteBuffer> freeBuffers,
+                                        RingBufferQueue<FastByteBuffer> workQueue,
+                                        AtomicLong fileReadersCounter,
+                                        int consumersNumber,
+                                        int bufferSize) {
+        this(null, null, opener, false, 0, Long.MAX_VALUE, freeBuffers, workQueue, fileReadersCounter, consumersNumber,
+                bufferSize);
+    }
+
+    private NewLineAlignedBufferProducer(File file, ReadableByteChannel channel, InputOpener opener, boolean directIo,
+                                         long startOffset, long endOffset,
+                                         RingBufferQueue<FastByteBuffer> freeBuffers,
+                                         RingBufferQueue<FastByteBuffer> workQueue,
+                                         AtomicLong fileReadersCounter,
+                                         int consumersNumber,
+                                         int bufferSize) {
         this.file = file;
+        this.channel = channel;
+        this.opener = opener;
+        this.directIo = directIo;
         this.startOffset = startOffset;
         this.endOffset = endOffset;
         this.freeBuffers = freeBuffers;
@@ -52,40 +123,174 @@ public class NewLineAlignedBufferProducer implements Runnable {
     }
 
     private void readLoop() throws IOException, InterruptedException {
+        if (channel != null) {
+            readLoop((array, offset, length) -> readFully(channel, ByteBuffer.wrap(array, offset, length)));
+            return;
+        }
+        if (opener != null) {
+            try (InputStream in = opener.open()) {
+                readLoop((array, offset, length) -> {
+                    int bytesRead = in.readNBytes(array, offset, length);
+                    return bytesRead == 0 && length > 0 ? -1 : bytesRead;
+                });
+            }
+            return;
+        }
+        if (directIo) {
+            int blockSize = DirectIo.blockSize(file);
+            // a read starts up to a block before the position, so one extra block keeps bufferSize bytes after it;
+            // a shorter read without a newline would be taken for a line longer than the buffer and skipped
+            try (AlignedBuffer aligned = DirectIo.allocateAligned(bufferSize + blockSize, blockSize);
+                 FileChannel fileChannel = DirectIo.open(file)) {
+                ByteBuffer alignedBuffer = aligned.buffer();
+                // direct reads land in the aligned native buffer and are copied once into the heap buffer
+                readFileLoop((position, array, length) -> {
+                    int offset = DirectIo.readAligned(fileChannel, alignedBuffer, position, blockSize);
+                    if (offset == -1) {
+                        return -1;
+                    }
+                    int bytesRead = Math.min(length, alignedBuffer.limit() - offset);
+                    alignedBuffer.get(offset, array, 0, bytesRead);
+                    return bytesRead;
+                });
+            }
+            return;
+        }
         try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-            raf.seek(startOffset);
-            byte[] leftover = new byte[bufferSize];
-            int leftoverSize = 0;
-            long currentPos = startOffset;
-            while (currentPos < endOffset) {
-                if (Thread.currentThread().isInterrupted()) {
-                    throw new ThreadWasInterrupted();
-                }
-                
-                FastByteBuffer buffer = freeBuffers.take();
-                buffer.length = 0;
-
-                drainLeftoversToBuffer(leftoverSize, leftover, buffer);
+            readFileLoop((position, array, length) -> {
+                raf.seek(position);
+                return raf.read(array, 0, length);
+            });
+        }
+    }
 
-                int maxToRead = getMaxToRead(currentPos, buffer);
-                int bytesRead = raf.read(buffer.array, buffer.length, maxToRead);
-                if (bytesRead == -1) {
-                    break;
-                }
-                buffer.length += bytesRead;
-                currentPos += bytesRead;
+    /**
+     * Reads the file range buffer by buffer. The partial line at the end of a buffer is not carried over:
+     * the next read starts at the beginning of that line, so the bytes are copied only once, by the read itself.
+     */
+    private void readFileLoop(PositionalSource source) throws IOException, InterruptedException {
+        long currentPos = startOffset;
+        while (currentPos < endOffset) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new ThreadWasInterrupted();
+            }
 
-                leftoverSize = alignBufferEndToNewlineKeepingLeftover(buffer, leftover);
+            FastByteBuffer buffer = freeBuffers.take();
+            int maxToRead = (int) Math.min(buffer.capacity, endOffset - currentPos);
+            int bytesRead = source.read(currentPos, buffer.array, maxToRead);
+            if (bytesRead == -1) {
+                freeBuffers.put(buffer);
+                break;
+            }
+            long filePos = currentPos + bytesRead;
 
-                if (buffer.length > 0) {
-                    workQueue.put(buffer);
+            int length = bytesRead;
+            if (buffer.array[length - 1] != '\n') {
+                if (filePos >= endOffset && length < buffer.capacity) {
+                    // the last line of the file has no newline
+                    buffer.array[length++] = '\n';
                 } else {
-                    freeBuffers.put(buffer);
+                    length = lengthUpToLastNewline(buffer.array, length);
+                    if (length == 0) {
+                        // a line longer than the buffer cannot be an IPv4 address; passed on, its pieces would
+                        // leave half-parsed state in the parsers of different consumers, so it is skipped
+                        currentPos = skipPastNextNewline(source, filePos, buffer.array);
+                        freeBuffers.put(buffer);
+                        continue;
+                    }
+                }
+            }
+            buffer.length = length;
+            currentPos += Math.min(length, bytesRead);
+            workQueue.put(buffer);
+        }
+        notifyFileReadFinishedToWorkQueue();
+    }
+
+    /**
+     * Returns the position right after the first newline at or after {@code position},
+     * or the end of the range if there is none.
+     */
+    private long skipPastNextNewline(PositionalSource source, long position, byte[] array) throws IOException {
+        while (position < endOffset) {
+            int bytesRead = source.read(position, array, (int) Math.min(array.length, endOffset - position));
+            if (bytesRead == -1) {
+                break;
+            }
+            for (int i = 0; i < bytesRead; i++) {
+                if (array[i] == '\n') {
+                    return position + i + 1;
                 }
             }
-            sendLeftoverToWorkQueue(leftoverSize, leftover);
-            notifyFileReadFinishedToWorkQueue();
+            position += bytesRead;
+        }
+        return endOffset;
+    }
+
+    /**
+     * Reads a stream that cannot be re-read, so the partial line at the end of a buffer is kept in a spill array
+     * and copied to the start of the next buffer.
+     */
+    private void readLoop(ByteSource source) throws IOException, InterruptedException {
+        byte[] leftover = new byte[bufferSize];
+        int leftoverSize = 0;
+        boolean skippingLine = false;
+        long currentPos = startOffset;
+        while (currentPos < endOffset) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new ThreadWasInterrupted();
+            }
+            
+            FastByteBuffer buffer = freeBuffers.take();
+            buffer.length = 0;
+
+            drainLeftoversToBuffer(leftoverSize, leftover, buffer);
+
+            int maxToRead = getMaxToRead(currentPos, buffer);
+            int bytesRead = source.read(buffer.array, buffer.length, maxToRead);
+            if (bytesRead == -1) {
+                break;
+            }
+            buffer.length += bytesRead;
+            currentPos += bytesRead;
+
+            if (skippingLine) {
+                skippingLine = !dropUpToFirstNewline(buffer);
+            }
+            leftoverSize = alignBufferEndToNewlineKeepingLeftover(buffer, leftover);
+            if (leftoverSize == buffer.capacity) {
+                // a line longer than the buffer cannot be an IPv4 address, and kept as leftover it would leave
+                // no room to read, so it is dropped up to the next newline
+                leftoverSize = 0;
+                skippingLine = true;
+            }
+
+            if (buffer.length > 0) {
+                workQueue.put(buffer);
+            } else {
+                freeBuffers.put(buffer);
+            }
+        }
+        sendLeftoverToWorkQueue(leftoverSize, leftover);
+        notifyFileReadFinishedToWorkQueue();
+    }
+
+    /**
+     * Fills the buffer, so pipes and stream channels that return a few KB per read still produce full buffers.
+     */
+    private static int readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer);
+            if (bytesRead == -1) {
+                return total > 0 ? total : -1;
+            }
+            if (bytesRead == 0) {
+                break;
+            }
+            total += bytesRead;
         }
+        return total;
     }
 
     private void notifyFileReadFinishedToWorkQueue() throws InterruptedException {
@@ -136,6 +341,33 @@ public class NewLineAlignedBufferProducer implements Runnable {
         return leftoverSize;
     }
 
+    /**
+     * Removes the bytes up to and including the first newline from the buffer.
+     *
+     * @return true if the buffer had a newline, otherwise the buffer is emptied
+     */
+    private static boolean dropUpToFirstNewline(FastByteBuffer buffer) {
+        for (int i = 0; i < buffer.length; i++) {
+            if (buffer.array[i] == '\n') {
+                int rest = buffer.length - i - 1;
+                System.arraycopy(buffer.array, i + 1, buffer.array, 0, rest);
+                buffer.length = rest;
+                return true;
+            }
+        }
+        buffer.length = 0;
+        return false;
+    }
+
+    private static int lengthUpToLastNewline(byte[] array, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (array[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
     private static void drainLeftoversToBuffer(int leftoverSize, byte[] leftover, FastByteBuffer buffer) {
         if (leftoverSize > 0) {
             System.arraycopy(leftover, 0, buffer.array, 0, leftoverSize);
@@ -154,4 +386,19 @@ public class NewLineAlignedBufferProducer implements Runnable {
         return maxToRead;
     }
 
+    /**
+     * Opens the stream a producer reads.
+     */
+    @FunctionalInterface
+    public interface InputOpener {
+        InputStream open() throws IOException;
+    }
+
+    private interface PositionalSource {
+        int read(long position, byte[] array, int length) throws IOException;
+    }
+
+    private interface ByteSource {
+        int read(byte[] array, int offset, int length) throws IOException;
+    }
 }
@@ -1,11 +1,30 @@
 package eta.ipaddrcounter;
 
+import eta.ipaddrcounter.concurrency.UniqIntCounterType;
+import eta.ipaddrcounter.file.BytesParser;
+import eta.ipaddrcounter.file.FastByteBuffer;
+import eta.ipaddrcounter.file.InputFiles;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 public class IntegrationTest {
@@ -26,6 +45,21 @@ public class IntegrationTest {
         assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
     }
 
+    @Test
+    public void testSimpleCounterWithManyWorkUnits() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 20;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        // 64 KB buffers allow units that small, so the 3 threads share about 3,000 units
+        long result = new SimpleIPv4UniqCounter(3, 64 * 1024, 1000, Ip4ParserType.VECTOR, UniqIntCounterType.HEAP)
+                .countUniqIPv4AtFileAsLong(tempFile);
+
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+    }
+
     @Test
     public void testWithIOSeparation() throws Exception {
         Path tempFile = tempDir.resolve("generated_ips.txt");
@@ -38,4 +72,303 @@ public class IntegrationTest {
 
         assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
     }
+
+    @Test
+    public void testWithIOSeparationOnVirtualThreads() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 20;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        // 32 readers on virtual threads, more readers than buffers
+        long result = IOSeparateIPv4UniqCounter.builder().ioThreads(32).cpuThreads(2).bufferSize(64 * 1024)
+                .buffersNumber(16).virtualIoThreads(true).build().countUniqIPv4AtFileAsLong(tempFile);
+
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+    }
+
+    @Test
+    public void testWithDirectIo() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 20;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        // Buffer sizes that are not a multiple of the block size, so reads and chunks are never aligned
+        long simpleResult = new SimpleIPv4UniqCounter(2, 64 * 1024 + 100, 4, true, Ip4ParserType.SCALAR,
+                UniqIntCounterType.HEAP).countUniqIPv4AtFileAsLong(tempFile);
+        assertEquals(uniqCount, simpleResult, "The simple counter should detect 100,000 unique IP addresses");
+
+        long ioResult = IOSeparateIPv4UniqCounter.builder().ioThreads(3).cpuThreads(2).bufferSize(64 * 1024 + 100)
+                .buffersNumber(8).directIo(true).build().countUniqIPv4AtFileAsLong(tempFile);
+        assertEquals(uniqCount, ioResult, "The IO separate counter should detect 100,000 unique IP addresses");
+    }
+
+    @Test
+    public void testWithDirectIoBufferSmallerThanBlock() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        // every IP once, so a skipped line changes the count
+        int uniqCount = 20_000;
+        TestFileGenerator.generateTestFile(tempFile, 0, uniqCount);
+
+        // a buffer below the block size, so a read starting late in a block must not come back short
+        long result = IOSeparateIPv4UniqCounter.builder().ioThreads(1).cpuThreads(1).bufferSize(1024)
+                .buffersNumber(4).directIo(true).build().countUniqIPv4AtFileAsLong(tempFile);
+        assertEquals(uniqCount, result, "The counter should detect 20,000 unique IP addresses");
+    }
+
+    @Test
+    public void testApproximateCount() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 20;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        long result = new SimpleIPv4UniqCounter(2, 64 * 1024, Ip4ParserType.SCALAR.batched(1024),
+                UniqIntCounterType.HYPER_LOG_LOG).countUniqIPv4AtFileAsLong(tempFile);
+
+        assertEquals(uniqCount, result, uniqCount * 0.03, "The estimate should be within 3% of 100,000");
+    }
+
+    @Test
+    public void testWithIOSeparationFromStream() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 20;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        // A stream channel that cannot be split or positioned, like stdin or a pipe
+        long result;
+        try (ReadableByteChannel channel = Channels.newChannel(Files.newInputStream(tempFile))) {
+            result = new IOSeparateIPv4UniqCounter(1, 2, 64 * 1024, 6).countUniqIPv4AtChannelAsLong(channel);
+        }
+
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+    }
+
+    @Test
+    @Timeout(10)
+    public void testStreamWithLineLongerThanBuffer() throws Exception {
+        byte[] content = ("1.2.3.4\n" + "x".repeat(300) + "\n5.6.7.8\n").getBytes(StandardCharsets.US_ASCII);
+
+        long result;
+        try (ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(content))) {
+            result = new IOSeparateIPv4UniqCounter(1, 2, 64, 6).countUniqIPv4AtChannelAsLong(channel);
+        }
+
+        assertEquals(2, result, "The long line should be skipped and the IPs around it counted");
+    }
+
+    @Test
+    public void testWithIOSeparationFromGzip() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 20;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+        Path gzipFile = tempDir.resolve("generated_ips.txt.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipFile))) {
+            Files.copy(tempFile, out);
+        }
+        Path bgzfFile = tempDir.resolve("generated_ips.bgzf.gz");
+        TestFileGenerator.writeBgzf(bgzfFile, Files.readAllBytes(tempFile), () -> 65_280);
+
+        IOSeparateIPv4UniqCounter counter = new IOSeparateIPv4UniqCounter(3, 2, 64 * 1024, 6);
+        assertEquals(uniqCount, counter.countUniqIPv4AtFile(gzipFile),
+                "The counter should detect 100,000 unique IP addresses");
+        assertEquals(uniqCount, counter.countUniqIPv4AtFile(bgzfFile),
+                "The counter should detect 100,000 unique IP addresses");
+        assertThrows(IllegalArgumentException.class, () -> new SimpleIPv4UniqCounter(2).countUniqIPv4AtFile(gzipFile),
+                "The simple counter cannot read compressed files");
+    }
+
+    @Test
+    public void testMapped() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 100;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        int result = new MappedIPv4UniqCounter().countUniqIPv4AtFile(tempFile);
+
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+    }
+
+    @Test
+    public void testMappedWithSmallWindows() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 10;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        // Window and slice sizes are not multiples of the line length, so IPs span windows and slices
+        int result = new MappedIPv4UniqCounter(3, 1024 * 1024 + 7, 4093).countUniqIPv4AtFile(tempFile);
+
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+    }
+
+    @Test
+    public void testWithIOSeparationAndVectorParser() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 100;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        int result = new IOSeparateIPv4UniqCounter(1, 2, 64 * 1024, 6, Ip4ParserType.VECTOR).countUniqIPv4AtFile(tempFile);
+
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+    }
+
+    @Test
+    public void testSimpleCounterWithBatchedParser() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 100;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        int result = new SimpleIPv4UniqCounter(4, 1024 * 1024, Ip4ParserType.SCALAR.batched(4096))
+                .countUniqIPv4AtFile(tempFile);
+
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+    }
+
+    @Test
+    public void testPrivateBitmaps() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 100;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        // the memory budget decides the path, so each one is forced instead of depending on the test heap;
+        // a single 512 MB bitmap fits into the default test heap
+        PrivateBitmapsIPv4UniqCounter privateBitmaps = new PrivateBitmapsIPv4UniqCounter(1, 1024 * 1024,
+                Ip4ParserType.SCALAR, () -> Long.MAX_VALUE);
+        assertTrue(privateBitmaps.fitsIntoMemory(1), "The private bitmaps should be used");
+        int result = privateBitmaps.countUniqIPv4AtFile(tempFile);
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+
+        PrivateBitmapsIPv4UniqCounter fallback = new PrivateBitmapsIPv4UniqCounter(8, 1024 * 1024,
+                Ip4ParserType.SCALAR, () -> 0);
+        assertFalse(fallback.fitsIntoMemory(1), "The shared counter should be used");
+        result = fallback.countUniqIPv4AtFile(tempFile);
+        assertEquals(uniqCount, result, "The fallback should detect 100,000 unique IP addresses");
+    }
+
+    @Test
+    public void testSimpleCounterWithOffHeapBitmap() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 100;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        long result = new SimpleIPv4UniqCounter(4, 1024 * 1024, Ip4ParserType.SCALAR, UniqIntCounterType.OFF_HEAP)
+                .countUniqIPv4AtFileAsLong(tempFile);
+
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+    }
+
+    @Test
+    public void testSimpleCounterWithAdaptiveCounter() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 100;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        long result = new SimpleIPv4UniqCounter(4, 1024 * 1024, Ip4ParserType.SCALAR.batched(4096),
+                UniqIntCounterType.ADAPTIVE).countUniqIPv4AtFileAsLong(tempFile);
+
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+    }
+
+    @Test
+    public void testMultipleFilesDirectoryAndGlob() throws Exception {
+        Path inputDir = Files.createDirectory(tempDir.resolve("input"));
+        Path bigFile = inputDir.resolve("ips-1.txt");
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(bigFile, 20, uniqCount);
+        // A copy of the big file and a small file with a subset of its IPs must not add unique IPs
+        Files.copy(bigFile, inputDir.resolve("ips-2.txt"));
+        try (Stream<String> lines = Files.lines(bigFile)) {
+            Files.write(inputDir.resolve("ips-3.txt"), lines.limit(1000).toList());
+        }
+        Files.writeString(inputDir.resolve("other.log"), "1.2.3.4\n");
+
+        long result = new SimpleIPv4UniqCounter(4).countUniqIPv4AtFilesAsLong(List.of(inputDir));
+        assertEquals(uniqCount + 1, result, "The directory should contain 100,001 unique IP addresses");
+
+        List<Path> globbed = InputFiles.resolve(inputDir + "/ips-*.txt");
+        assertEquals(3, globbed.size(), "The glob should match the three ips files");
+        result = new IOSeparateIPv4UniqCounter(2, 2, 64 * 1024, 6).countUniqIPv4AtFilesAsLong(globbed);
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+
+        result = new PrivateBitmapsIPv4UniqCounter(1, 1024 * 1024, Ip4ParserType.SCALAR).countUniqIPv4AtFilesAsLong(globbed);
+        assertEquals(uniqCount, result, "The counter should detect 100,000 unique IP addresses");
+    }
+
+    @Test
+    public void testIntCountIsCheckedForOverflow() {
+        IPv4UniqCounter counter = paths -> 3_000_000_000L;
+
+        assertEquals(3_000_000_000L, counter.countUniqIPv4AtFileAsLong(tempDir));
+        assertThrows(ArithmeticException.class, () -> counter.countUniqIPv4AtFile(tempDir),
+                "A count above Integer.MAX_VALUE must not overflow silently");
+    }
+
+    @Test
+    public void testHasAtLeastNUniqStopsEarly() throws Exception {
+        Path tempFile = tempDir.resolve("generated_ips.txt");
+
+        long fileSizeMb = 20;
+        int uniqCount = 100_000;
+        TestFileGenerator.generateTestFile(tempFile, fileSizeMb, uniqCount);
+
+        AtomicInteger parsedBuffers = new AtomicInteger();
+        Ip4ParserFactory countingParsers = sink -> {
+            BytesParser parser = Ip4ParserType.SCALAR.create(sink);
+            return new BytesParser() {
+                @Override
+                public void parseBuffer(FastByteBuffer fastBuf) {
+                    parsedBuffers.incrementAndGet();
+                    parser.parseBuffer(fastBuf);
+                }
+
+                @Override
+                public void parseByteBuffer(ByteBuffer buf) {
+                    parsedBuffers.incrementAndGet();
+                    parser.parseByteBuffer(buf);
+                }
+
+                @Override
+                public void afterLastBuffer() {
+                    parser.afterLastBuffer();
+                }
+            };
+        };
+        // about 320 buffers of 64 KB, each with thousands of IPs
+        SimpleIPv4UniqCounter simple = new SimpleIPv4UniqCounter(2, 64 * 1024, 16, countingParsers,
+                UniqIntCounterType.HEAP);
+        assertTrue(simple.hasAtLeastNUniq(tempFile, 1000), "The file has more than 1,000 unique IPs");
+        assertTrue(parsedBuffers.get() < 20, "Expected the count to stop early, parsed " + parsedBuffers.get());
+        assertFalse(simple.hasAtLeastNUniq(tempFile, uniqCount + 1), "The file has only 100,000 unique IPs");
+
+        parsedBuffers.set(0);
+        IOSeparateIPv4UniqCounter io = new IOSeparateIPv4UniqCounter(2, 2, 64 * 1024, 6, countingParsers,
+                UniqIntCounterType.HEAP);
+        assertTrue(io.hasAtLeastNUniq(tempFile, 1000), "The file has more than 1,000 unique IPs");
+        assertTrue(parsedBuffers.get() < 20, "Expected the count to stop early, parsed " + parsedBuffers.get());
+        assertTrue(io.hasAtLeastNUniq(tempFile, uniqCount), "The file has 100,000 unique IPs");
+        assertFalse(io.hasAtLeastNUniq(tempFile, uniqCount + 1), "The file has only 100,000 unique IPs");
+    }
 }
@@ -0,0 +1,78 @@
+package eta.ipaddrcounter;
+
+import eta.ipaddrcounter.concurrency.UniqIntThreadSafeCounter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class LiveIPv4UniqCounterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testPollCountsAppendedCompleteLines() throws Exception {
+        Path log = tempDir.resolve("access.log");
+        append(log, "10.0.0.1\n10.0.0.2\n10.0.0.1\n10.0.0.");
+        UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter();
+        counter.add(0x0A000001);
+        LiveIPv4UniqCounter live = new LiveIPv4UniqCounter(log.toFile(), 0, counter, Duration.ofSeconds(1), 4,
+                Ip4ParserType.SCALAR, count -> {
+        });
+
+        assertEquals(2, live.poll(), "The partial last line must wait for its newline");
+        assertEquals(2, live.poll(), "Nothing new was appended");
+
+        append(log, "3\n10.0.0.2\n");
+        StringBuilder more = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            more.append("10.1.").append(i / 256).append('.').append(i % 256).append('\n');
+        }
+        append(log, more.toString());
+        assertEquals(10_003, live.poll(), "Unexpected running count");
+        assertEquals(counter.getUniqCountByPopcount(), live.getUniqCountAsLong(), "The running count should match a popcount");
+        assertEquals(Files.size(log), live.getOffset(), "Every complete line should be read");
+
+        // A rotated file is followed from the start
+        Files.delete(log);
+        append(log, "10.0.0.1\n10.2.0.1\n");
+        assertEquals(10_004, live.poll(), "Unexpected count after rotation");
+    }
+
+    @Test
+    public void testRunEmitsCountAtInterval() throws Exception {
+        Path log = tempDir.resolve("access.log");
+        append(log, "1.2.3.4\n");
+        LinkedBlockingQueue<Long> counts = new LinkedBlockingQueue<>();
+        LiveIPv4UniqCounter live = new LiveIPv4UniqCounter(log.toFile(), Duration.ofMillis(20), counts::add);
+        Thread thread = new Thread(live);
+        thread.start();
+
+        assertEquals(1L, counts.poll(10, TimeUnit.SECONDS), "Expected the first count");
+        append(log, "5.6.7.8\n");
+        Long count;
+        do {
+            count = counts.poll(10, TimeUnit.SECONDS);
+        } while (count != null && count == 1L);
+        assertEquals(2L, count, "Expected the appended IP to be counted");
+
+        live.close();
+        thread.join(10_000);
+        assertFalse(thread.isAlive(), "The follower should stop after close");
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.writeString(file, text, StandardCharsets.US_ASCII, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
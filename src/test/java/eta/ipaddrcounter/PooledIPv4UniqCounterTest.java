@@ -0,0 +1,34 @@
+package eta.ipaddrcounter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PooledIPv4UniqCounterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testBitmapIsClearedBetweenCalls() throws Exception {
+        Path large = tempDir.resolve("large.txt");
+        TestFileGenerator.generateTestFile(large, 10, 50_000);
+        Path small = tempDir.resolve("small.txt");
+        Files.writeString(small, "1.2.3.4\n5.6.7.8\n1.2.3.4\n");
+        Path missing = tempDir.resolve("missing.txt");
+
+        // one bitmap, so every call reuses the bitmap of the previous one
+        try (PooledIPv4UniqCounter counter = new PooledIPv4UniqCounter(2, 64 * 1024, 1, Ip4ParserType.SCALAR)) {
+            assertEquals(50_000, counter.countUniqIPv4AtFileAsLong(large), "Unexpected count of the large file");
+            assertEquals(2, counter.countUniqIPv4AtFileAsLong(small), "The previous IPs should be cleared");
+            assertThrows(IllegalArgumentException.class, () -> counter.countUniqIPv4AtFileAsLong(missing));
+            assertEquals(50_000, counter.countUniqIPv4AtFileAsLong(large), "Unexpected count after a failed call");
+            assertEquals(2, counter.countUniqIPv4AtFileAsLong(small), "The previous IPs should be cleared");
+        }
+    }
+}
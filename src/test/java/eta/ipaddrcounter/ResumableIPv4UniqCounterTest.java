@@ -0,0 +1,71 @@
+package eta.ipaddrcounter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResumableIPv4UniqCounterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testResumeCountsOnlyAppendedLines() throws Exception {
+        Path log = tempDir.resolve("access.log");
+        Path checkpointDir = tempDir.resolve("checkpoint");
+        // 50,000 IPs and a last line that is still being written
+        append(log, lines(10, 50_000) + "10.1.0.");
+
+        // Small rounds, so the first run writes several checkpoints
+        assertEquals(50_000, newCounter(checkpointDir).countUniqIPv4AtFileAsLong(log),
+                "The partial last line must not be counted yet");
+
+        // The last line is completed, 1,000 new IPs and 50,000 known ones are appended
+        append(log, "1\n" + lines(11, 1_000) + lines(10, 50_000));
+        assertEquals(51_001, newCounter(checkpointDir).countUniqIPv4AtFileAsLong(log),
+                "The resumed count should include the appended IPs");
+
+        // Nothing new: the saved bitmap is counted as it is
+        assertEquals(51_001, newCounter(checkpointDir).countUniqIPv4AtFilesAsLong(List.of(log)),
+                "A run without new lines should return the saved count");
+    }
+
+    @Test
+    public void testRotatedFileIsCountedFromTheStart() throws Exception {
+        Path log = tempDir.resolve("access.log");
+        Path checkpointDir = tempDir.resolve("checkpoint");
+        append(log, lines(10, 20_000));
+        assertEquals(20_000, newCounter(checkpointDir).countUniqIPv4AtFileAsLong(log), "Unexpected first count");
+
+        // The file is replaced by a shorter one with other IPs
+        Files.delete(log);
+        append(log, lines(12, 300));
+        assertEquals(20_300, newCounter(checkpointDir).countUniqIPv4AtFileAsLong(log),
+                "The rotated file should be counted from the start");
+    }
+
+    private static ResumableIPv4UniqCounter newCounter(Path checkpointDir) {
+        return new ResumableIPv4UniqCounter(checkpointDir, 64 * 1024, 2, 16 * 1024, Ip4ParserType.SCALAR);
+    }
+
+    private static String lines(int firstOctet, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(firstOctet).append('.').append(i >> 16).append('.').append((i >> 8) & 0xFF).append('.')
+                    .append(i & 0xFF).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.writeString(file, text, StandardCharsets.US_ASCII, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -1,16 +1,22 @@
 package eta.ipaddrcounter;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 /**
  * Utility for generating a test file containing random IP addresses.
@@ -70,4 +76,47 @@ public class TestFileGenerator {
             channel.write(buffer);
         }
     }
+
+    /**
+     * Writes the data as a BGZF file: gzip members of at most {@code blockSize} uncompressed bytes each
+     * with the block size in a 'BC' extra field, followed by the empty end-of-file block.
+     *
+     * @param filePath  the path of the file to write
+     * @param data      the uncompressed data
+     * @param blockSize the uncompressed size of the next block, called once per block
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeBgzf(Path filePath, byte[] data, IntSupplier blockSize) throws IOException {
+        try (OutputStream out = Files.newOutputStream(filePath)) {
+            int pos = 0;
+            while (pos < data.length) {
+                int length = Math.min(Math.max(blockSize.getAsInt(), 1), data.length - pos);
+                writeBgzfBlock(out, data, pos, length);
+                pos += length;
+            }
+            writeBgzfBlock(out, data, 0, 0);
+        }
+    }
+
+    private static void writeBgzfBlock(OutputStream out, byte[] data, int from, int length) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, from, length);
+        deflater.finish();
+        byte[] compressed = new byte[length + 1024];
+        int compressedSize = 0;
+        while (!deflater.finished()) {
+            compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data, from, length);
+
+        ByteBuffer block = ByteBuffer.allocate(18 + compressedSize + 8).order(ByteOrder.LITTLE_ENDIAN);
+        block.put(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0});
+        block.putShort((short) (block.capacity() - 1));
+        block.put(compressed, 0, compressedSize);
+        block.putInt((int) crc.getValue());
+        block.putInt(length);
+        out.write(block.array());
+    }
 }
@@ -0,0 +1,129 @@
+package eta.ipaddrcounter;
+
+import eta.ipaddrcounter.concurrency.IntSink;
+import eta.ipaddrcounter.concurrency.UniqIntThreadSafeCounter;
+import eta.ipaddrcounter.file.BytesParser;
+import eta.ipaddrcounter.file.FastByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class VectorIp4ParserTest {
+
+    private static final String[] MALFORMED_LINES = {
+            "", "1..2.3", "300.1.2.3", "a.b.c.d", "1.2.3.4.5", "1234.5.6.7", "10.0.0.1\r", " 10.0.0.2",
+            "1.2.3", ".1.2.3", "1.2.3.", "999.999.999.999", "0.0.0.0", "255.255.255.255", "12.34.56.7x8"
+    };
+
+    @Test
+    public void testSameIpsAsScalarParserWithRandomBufferBoundaries() {
+        byte[] data = generateLines(new Random(42), 200_000);
+
+        // Every IP found by one parser must already be known to the other one, in both directions
+        long scalarCount = assertSecondParserAddsNothing(Ip4ParserType.SCALAR, Ip4ParserType.VECTOR, data);
+        long vectorCount = assertSecondParserAddsNothing(Ip4ParserType.VECTOR, Ip4ParserType.SCALAR, data);
+
+        assertEquals(scalarCount, vectorCount, "Parsers should find the same number of unique IPs");
+    }
+
+    @Test
+    public void testIpSpanningBuffersAndLastLineWithoutNewline() {
+        byte[] data = "10.1.2.3\n192.168.100.200\n8.8.8.8".getBytes(StandardCharsets.US_ASCII);
+
+        UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter();
+        VectorIp4Parser parser = new VectorIp4Parser(counter);
+        parser.parseBuffer(fastBuffer(data, 0, 13));
+        parser.parseByteBuffer(ByteBuffer.allocateDirect(data.length - 13).put(data, 13, data.length - 13).flip());
+        parser.afterLastBuffer();
+
+        assertEquals(3, counter.getUniqCount(), "Expected 3 unique values");
+    }
+
+    @Test
+    public void testCustomSinkReceivesEveryIp() {
+        byte[] data = "10.1.2.3\nbad line\n192.168.100.200\n10.1.2.3\n8.8.8.8".getBytes(StandardCharsets.US_ASCII);
+        List<Integer> expected = List.of(0x0A010203, 0xC0A864C8, 0x0A010203, 0x08080808);
+
+        for (Ip4ParserType type : Ip4ParserType.values()) {
+            for (int batchSize : new int[]{0, 3}) {
+                List<Integer> received = new ArrayList<>();
+                int[] flushes = new int[1];
+                IntSink sink = new IntSink() {
+                    @Override
+                    public void accept(int value) {
+                        received.add(value);
+                    }
+
+                    @Override
+                    public void accept(int[] values, int length) {
+                        for (int i = 0; i < length; i++) {
+                            received.add(values[i]);
+                        }
+                    }
+
+                    @Override
+                    public void flush() {
+                        flushes[0]++;
+                    }
+                };
+                parse(type.create(sink, batchSize), data, new Random(batchSize));
+                assertEquals(expected, received, type + " parser with batch size " + batchSize);
+                assertEquals(1, flushes[0], "The sink should be flushed once after the last buffer");
+            }
+        }
+    }
+
+    private static long assertSecondParserAddsNothing(Ip4ParserType first, Ip4ParserType second, byte[] data) {
+        UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter();
+        parse(first.create(counter), data, new Random(1));
+        long firstCount = counter.getUniqCount();
+        parse(second.create(counter), data, new Random(2));
+        assertEquals(firstCount, counter.getUniqCount(), second + " parser found IPs the " + first + " parser did not");
+        return firstCount;
+    }
+
+    private static void parse(BytesParser parser, byte[] data, Random random) {
+        int pos = 0;
+        while (pos < data.length) {
+            int length = Math.min(data.length - pos, 1 + random.nextInt(20_000));
+            if (random.nextBoolean()) {
+                parser.parseBuffer(fastBuffer(data, pos, length));
+            } else {
+                parser.parseByteBuffer(ByteBuffer.allocateDirect(length).put(data, pos, length).flip());
+            }
+            pos += length;
+        }
+        parser.afterLastBuffer();
+    }
+
+    private static FastByteBuffer fastBuffer(byte[] data, int from, int length) {
+        byte[] array = new byte[length];
+        System.arraycopy(data, from, array, 0, length);
+        FastByteBuffer buffer = new FastByteBuffer(array);
+        buffer.length = length;
+        return buffer;
+    }
+
+    private static byte[] generateLines(Random random, int linesNumber) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < linesNumber; i++) {
+            String line;
+            if (random.nextInt(10) == 0) {
+                line = MALFORMED_LINES[random.nextInt(MALFORMED_LINES.length)];
+            } else {
+                line = random.nextInt(256) + "." + random.nextInt(256) + "." +
+                       random.nextInt(256) + "." + random.nextInt(256);
+            }
+            out.writeBytes((line + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+        out.writeBytes("77.66.55.44".getBytes(StandardCharsets.US_ASCII));
+        return out.toByteArray();
+    }
+}
@@ -1,7 +1,10 @@
 package eta.ipaddrcounter.bench;
 
 import eta.ipaddrcounter.IOSeparateIPv4UniqCounter;
+import eta.ipaddrcounter.Ip4ParserType;
+import eta.ipaddrcounter.MappedIPv4UniqCounter;
 import eta.ipaddrcounter.SimpleIPv4UniqCounter;
+import eta.ipaddrcounter.concurrency.UniqIntCounterType;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.results.format.ResultFormatType;
 import org.openjdk.jmh.runner.Runner;
@@ -27,6 +30,7 @@ public class AllBenchmark {
                 .forks(1)
                 .warmupIterations(0)
                 .measurementIterations(1)
+                .jvmArgsAppend("--add-modules", "jdk.incubator.vector")
 //                .jvmArgs(
 //                        "-Xms2G",
 //                        "-Xmx2G",
@@ -44,16 +48,54 @@ public class AllBenchmark {
 //    @Param({"18", "17", "16"})
 //    public int threads;
 
+    @Param({"SCALAR", "VECTOR"})
+    public Ip4ParserType parserType;
+
+    /**
+     * 0 adds every IP with its own CAS loop, other values collect IPs in a per-thread {@code UniqIntBatch} first.
+     */
+    @Param({"0", "4096"})
+    public int batchSize;
+
+    /**
+     * The shared counter; {@link PrivateBitmapsBenchmark} covers the engine with per-thread bitmaps.
+     */
+    @Param({"HEAP", "OFF_HEAP", "ADAPTIVE"})
+    public UniqIntCounterType counterType;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
     @Benchmark
     public void runSimple(FileCreationState state) {
         Path testFile = state.testFile;
-        new SimpleIPv4UniqCounter().countUniqIPv4AtFile(testFile);
+        new SimpleIPv4UniqCounter(THREADS, BUFFER_SIZE, parserType.batched(batchSize), counterType)
+                .countUniqIPv4AtFile(testFile);
+    }
+
+    /**
+     * The simple engine with one static chunk per thread, to compare with the work units of {@link #runSimple}.
+     */
+    @Benchmark
+    public void runSimpleStaticChunks(FileCreationState state) {
+        Path testFile = state.testFile;
+        new SimpleIPv4UniqCounter(THREADS, BUFFER_SIZE, 1, parserType.batched(batchSize), counterType)
+                .countUniqIPv4AtFile(testFile);
     }
 
     @Benchmark
     public void runIOSeparate(FileCreationState state)  {
         Path testFile = state.testFile;
-        new IOSeparateIPv4UniqCounter().countUniqIPv4AtFile(testFile);
+        new IOSeparateIPv4UniqCounter(Math.max(THREADS / 2, 1), THREADS, BUFFER_SIZE, THREADS * 3,
+                parserType.batched(batchSize), counterType)
+                .countUniqIPv4AtFile(testFile);
+    }
+
+    @Benchmark
+    public void runMapped(FileCreationState state) {
+        Path testFile = state.testFile;
+        new MappedIPv4UniqCounter(THREADS, 256 * 1024 * 1024, BUFFER_SIZE, parserType.batched(batchSize), counterType)
+                .countUniqIPv4AtFile(testFile);
     }
 
 }
@@ -12,13 +12,18 @@ public class FileCreationState {
 
     public Path testFile;
 
+    /**
+     * Low cardinality makes all threads hit the same bitmap words, high cardinality spreads them over the bitmap.
+     */
+    @Param({"1000", "1000000"})
+    public int uniqCount;
+
     @Setup(Level.Trial)
     public void setUp() throws IOException {
         // Create a temporary test file
         testFile = Files.createTempFile("jmh-test-", ".txt");
 
         long fileSizeMb = 1000;
-        int uniqCount = 100_000;
         TestFileGenerator.generateTestFile(testFile, fileSizeMb, uniqCount);
     }
 
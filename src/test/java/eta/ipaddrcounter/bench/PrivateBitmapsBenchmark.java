@@ -0,0 +1,47 @@
+package eta.ipaddrcounter.bench;
+
+import eta.ipaddrcounter.Ip4ParserType;
+import eta.ipaddrcounter.PrivateBitmapsIPv4UniqCounter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link PrivateBitmapsIPv4UniqCounter}. Its threads add to their own bitmaps, so unlike
+ * {@link AllBenchmark} there is no shared counter type to vary.
+ */
+@BenchmarkMode({Mode.SingleShotTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class PrivateBitmapsBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(PrivateBitmapsBenchmark.class.getSimpleName())
+                .forks(1)
+                .warmupIterations(0)
+                .measurementIterations(1)
+                .jvmArgsAppend("--add-modules", "jdk.incubator.vector")
+                .build()
+        ).run();
+    }
+
+    @Param({"SCALAR", "VECTOR"})
+    public Ip4ParserType parserType;
+
+    @Param({"0", "4096"})
+    public int batchSize;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    @Benchmark
+    public void runPrivateBitmaps(FileCreationState state) {
+        Path testFile = state.testFile;
+        new PrivateBitmapsIPv4UniqCounter(THREADS, BUFFER_SIZE, parserType.batched(batchSize))
+                .countUniqIPv4AtFile(testFile);
+    }
+}
@@ -0,0 +1,102 @@
+package eta.ipaddrcounter.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveUniqIntCounterTest {
+
+    @Test
+    public void testSparseValuesMatchHashSet() {
+        AdaptiveUniqIntCounter counter = new AdaptiveUniqIntCounter();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            int value = random.nextInt();
+            counter.add(value);
+            expected.add(value);
+        }
+        assertEquals(expected.size(), counter.getUniqCount(), "Unique count should match a HashSet");
+    }
+
+    @Test
+    public void testDenseContainersSwitchToBitmapAndRuns() {
+        AdaptiveUniqIntCounter counter = new AdaptiveUniqIntCounter();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(11);
+        // One container above the array limit, one completely filled, one with a few long runs
+        for (int i = 0; i < 20_000; i++) {
+            int value = (5 << 16) | random.nextInt(1 << 16);
+            counter.add(value);
+            expected.add(value);
+        }
+        for (int low = (1 << 16) - 1; low >= 0; low--) {
+            counter.add((-1 << 16) | low);
+            expected.add((-1 << 16) | low);
+        }
+        for (int low = 0; low < 1 << 16; low++) {
+            if (low % 1000 < 900) {
+                counter.add((9 << 16) | low);
+                expected.add((9 << 16) | low);
+            }
+        }
+        assertEquals(expected.size(), counter.getUniqCount(), "Unique count should match a HashSet");
+
+        long sizeBefore = counter.getSizeInBytes();
+        counter.optimize();
+        assertEquals(expected.size(), counter.getUniqCount(), "Optimize must not change the unique count");
+        assertTrue(counter.getSizeInBytes() <= sizeBefore, "Optimize must not grow the containers");
+
+        // Adding existing values and values between runs after optimize
+        for (int value : expected) {
+            counter.add(value);
+        }
+        counter.add((9 << 16) | 950);
+        assertEquals(expected.size() + 1, counter.getUniqCount(), "Expected one new value");
+    }
+
+    @Test
+    public void testSmallFootprintForFewValues() {
+        AdaptiveUniqIntCounter counter = new AdaptiveUniqIntCounter();
+        for (int i = 0; i < 100_000; i++) {
+            counter.add(i * 7919);
+        }
+        assertEquals(100_000, counter.getUniqCount(), "Expected 100,000 unique values");
+        assertTrue(counter.getSizeInBytes() < 1024 * 1024, "100,000 values should need less than 1 MB");
+    }
+
+    @Test
+    public void testConcurrentAddAndAddAll() throws Exception {
+        AdaptiveUniqIntCounter counter = new AdaptiveUniqIntCounter();
+        int numThreads = 8;
+        int valuesPerThread = 50_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        Future<?>[] futures = new Future<?>[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final int threadIndex = i;
+            futures[i] = executor.submit(() -> {
+                // Every thread adds the same hot values and its own distinct values
+                UniqIntBatch batch = new UniqIntBatch(counter, 1024);
+                for (int j = 0; j < valuesPerThread; j++) {
+                    counter.add(j % 100);
+                    batch.add(threadIndex * valuesPerThread + j + 1000);
+                }
+                batch.flush();
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(100 + numThreads * valuesPerThread, counter.getUniqCount(), "Unexpected unique count");
+    }
+}
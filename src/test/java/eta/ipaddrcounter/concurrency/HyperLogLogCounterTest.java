@@ -0,0 +1,75 @@
+package eta.ipaddrcounter.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HyperLogLogCounterTest {
+
+    @Test
+    public void testEstimateWithinErrorFromSmallToLargeCounts() {
+        HyperLogLogCounter counter = new HyperLogLogCounter();
+        assertEquals(0, counter.getUniqCountAsLong(), "An empty sketch should estimate 0");
+
+        // Four standard errors, so the test is stable for the fixed inputs
+        double maxError = 4 * HyperLogLogCounter.relativeStandardError(HyperLogLogCounter.DEF_PRECISION);
+        int added = 0;
+        for (int expected : new int[]{100, 10_000, 50_000, 1_000_000, 5_000_000}) {
+            for (; added < expected; added++) {
+                counter.add(added * 7919);
+                counter.add(added * 7919);
+            }
+            long estimate = counter.getUniqCountAsLong();
+            assertEquals(expected, estimate, expected * maxError, "Estimate out of range for " + expected);
+        }
+    }
+
+    @Test
+    public void testThreadLocalRegistersAndMerge() throws Exception {
+        HyperLogLogCounter counter = new HyperLogLogCounter(12);
+        int numThreads = 4;
+        int valuesPerThread = 100_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        Future<?>[] futures = new Future<?>[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final int threadIndex = i;
+            futures[i] = executor.submit(() -> {
+                // Every thread adds shared values and its own distinct values
+                UniqIntBatch batch = new UniqIntBatch(counter, 1024);
+                for (int j = 0; j < valuesPerThread; j++) {
+                    counter.add(j % 1000);
+                    batch.add(threadIndex * valuesPerThread + j + 1000);
+                }
+                batch.flush();
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // The same values added to a single sketch give exactly the same registers
+        HyperLogLogCounter single = new HyperLogLogCounter(12);
+        for (int j = 0; j < 1000 + numThreads * valuesPerThread; j++) {
+            single.add(j);
+        }
+        assertEquals(single.getUniqCountAsLong(), counter.getUniqCountAsLong(), "Unexpected merged estimate");
+
+        HyperLogLogCounter other = new HyperLogLogCounter(12);
+        Random random = new Random(5);
+        for (int j = 0; j < 200_000; j++) {
+            other.add(random.nextInt() | Integer.MIN_VALUE);
+        }
+        counter.merge(other);
+        double maxError = 4 * HyperLogLogCounter.relativeStandardError(12);
+        long expected = 1000 + numThreads * valuesPerThread + 200_000;
+        assertEquals(expected, counter.getUniqCountAsLong(), expected * maxError, "Unexpected estimate after merge");
+        assertThrows(IllegalArgumentException.class, () -> counter.merge(new HyperLogLogCounter(14)));
+    }
+}
@@ -0,0 +1,70 @@
+package eta.ipaddrcounter.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RingBufferQueueTest {
+
+    @Test
+    public void testOfferAndPollAtCapacity() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(3);
+        assertEquals(4, queue.capacity(), "Capacity should be rounded up to a power of two");
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(queue.offer(i), "The queue should accept 4 elements");
+            }
+            assertFalse(queue.offer(4), "A full queue should reject elements");
+            for (int i = 0; i < 4; i++) {
+                assertEquals(i, queue.poll(), "Elements should come out in FIFO order");
+            }
+            assertNull(queue.poll(), "An empty queue should return null");
+        }
+    }
+
+    @Test
+    public void testEveryElementIsTakenOnceByManyProducersAndConsumers() throws Exception {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(8);
+        int threads = 4;
+        int perProducer = 50_000;
+        AtomicIntegerArray taken = new AtomicIntegerArray(threads * perProducer);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads * 2);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < threads; p++) {
+            int producer = p;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.put(producer * perProducer + i);
+                }
+                queue.put(-1); // one poison pill per consumer
+                return null;
+            }));
+        }
+        for (int c = 0; c < threads; c++) {
+            futures.add(executor.submit(() -> {
+                int value;
+                while ((value = queue.take()) != -1) {
+                    taken.incrementAndGet(value);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        for (int i = 0; i < taken.length(); i++) {
+            assertEquals(1, taken.get(i), "Element " + i + " should be taken exactly once");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package eta.ipaddrcounter.concurrency;
+
+import eta.ipaddrcounter.concurrency.UniqIntPrefixCounts.PrefixCount;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UniqIntPrefixCountsTest {
+
+    @Test
+    public void testTopPrefixesOfEveryLength() {
+        UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter();
+        // 10.1.0.0/16: 600 IPs in three /24s, 10.2.0.0/16: 256 IPs in one /24, 192.168.1.0/24: 300 IPs
+        for (int i = 0; i < 600; i++) {
+            counter.add(ip(10, 1, i % 3, i / 3));
+            counter.add(ip(10, 1, i % 3, i / 3));
+        }
+        for (int i = 0; i < 256; i++) {
+            counter.add(ip(10, 2, 7, i));
+        }
+        for (int i = 0; i < 300; i++) {
+            counter.add(ip(192, 168, 1, i % 256));
+            counter.add(ip(192, 168, 2, i % 44));
+        }
+        counter.add(ip(255, 255, 255, 255));
+
+        List<PrefixCount> top8 = UniqIntPrefixCounts.topPrefixes(counter, 8, 10, 3);
+        assertEquals(List.of(new PrefixCount(ip(10, 0, 0, 0), 8, 856), new PrefixCount(ip(192, 0, 0, 0), 8, 300),
+                new PrefixCount(ip(255, 0, 0, 0), 8, 1)), top8, "Unexpected /8 breakdown");
+
+        List<PrefixCount> top16 = UniqIntPrefixCounts.topPrefixes(counter, 16, 2, 4);
+        assertEquals(List.of(new PrefixCount(ip(10, 1, 0, 0), 16, 600), new PrefixCount(ip(192, 168, 0, 0), 16, 300)),
+                top16, "Unexpected /16 top 2");
+        assertEquals("10.1.0.0/16", top16.get(0).toCidr(), "Unexpected CIDR notation");
+
+        // Ties are ordered by prefix
+        List<PrefixCount> top24 = UniqIntPrefixCounts.topPrefixes(counter, 24, 3, 1);
+        assertEquals(List.of(ip(10, 2, 7, 0), ip(192, 168, 1, 0), ip(10, 1, 0, 0)),
+                top24.stream().map(PrefixCount::prefix).toList(), "Unexpected /24 top 3");
+        assertEquals(256, top24.get(0).count(), "Expected a full /24");
+        assertEquals(200, top24.get(2).count(), "Expected 200 IPs in 10.1.0.0/24");
+
+        List<PrefixCount> top26 = UniqIntPrefixCounts.topPrefixes(counter, 26, 100, 2);
+        assertEquals(1 + 1 + 4 + 4 + 3 * 4, top26.size(), "Unexpected number of non-empty /26 prefixes");
+        assertEquals(counter.getUniqCountAsLong(), top26.stream().mapToLong(PrefixCount::count).sum(),
+                "The prefix counts should add up to the unique count");
+
+        assertThrows(IllegalArgumentException.class, () -> UniqIntPrefixCounts.topPrefixes(counter, 27, 1, 1));
+    }
+
+    private static int ip(int a, int b, int c, int d) {
+        return (a << 24) | (b << 16) | (c << 8) | d;
+    }
+}
@@ -0,0 +1,82 @@
+package eta.ipaddrcounter.concurrency;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UniqIntSetFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSetAlgebraOnSavedSets() throws Exception {
+        // Sparse values, a dense container, a full container and long runs, in both sets
+        Set<Integer> first = generateValues(new Random(3));
+        Set<Integer> second = generateValues(new Random(4));
+        for (int low = 0; low < 1 << 16; low++) {
+            first.add((-1 << 16) | low);
+            if (low % 1000 < 900) {
+                first.add((9 << 16) | low);
+            }
+            if (low % 1000 >= 500) {
+                second.add((9 << 16) | low);
+            }
+        }
+        Path firstFile = tempDir.resolve("first.ips");
+        Path secondFile = tempDir.resolve("second.ips");
+        assertEquals(first.size(), write(first, firstFile), "Unexpected number of written values");
+        assertEquals(second.size(), write(second, secondFile), "Unexpected number of written values");
+        assertEquals(first.size(), UniqIntSetFile.readCardinality(firstFile), "Unexpected cardinality in the header");
+        assertTrue(Files.size(firstFile) < 512 * 1024, "The set file should be compact");
+
+        Set<Integer> union = new HashSet<>(first);
+        union.addAll(second);
+        Set<Integer> intersection = new HashSet<>(first);
+        intersection.retainAll(second);
+        Set<Integer> difference = new HashSet<>(first);
+        difference.removeAll(second);
+
+        assertEquals(first.size(), combineAndCount(firstFile, firstFile, UniqIntSetFile.Operation.UNION),
+                "Union with itself should not change the set");
+        assertEquals(union.size(), combineAndCount(firstFile, secondFile, UniqIntSetFile.Operation.UNION),
+                "Unexpected union size");
+        assertEquals(intersection.size(), combineAndCount(firstFile, secondFile, UniqIntSetFile.Operation.INTERSECT),
+                "Unexpected intersection size");
+        assertEquals(difference.size(), combineAndCount(firstFile, secondFile, UniqIntSetFile.Operation.DIFFERENCE),
+                "Unexpected difference size");
+    }
+
+    private static Set<Integer> generateValues(Random random) {
+        Set<Integer> values = new HashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            values.add(random.nextInt());
+            values.add((5 << 16) | random.nextInt(1 << 16));
+        }
+        values.add(0);
+        values.add(Integer.MIN_VALUE);
+        return values;
+    }
+
+    private static long write(Set<Integer> values, Path file) {
+        UniqIntBitmap bitmap = new UniqIntBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return UniqIntSetFile.write(bitmap, file);
+    }
+
+    private static long combineAndCount(Path first, Path second, UniqIntSetFile.Operation operation) {
+        UniqIntBitmap bitmap = UniqIntSetFile.read(first);
+        UniqIntSetFile.combine(bitmap, second, operation);
+        return bitmap.getUniqCountAsLong();
+    }
+}
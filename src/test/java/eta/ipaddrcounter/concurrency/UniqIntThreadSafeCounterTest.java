@@ -21,6 +21,67 @@ public class UniqIntThreadSafeCounterTest {
         assertEquals(3, counter.getUniqCount(), "Expected 3 unique values");
     }
 
+    @Test
+    public void testAddReportsNewValuesAndKeepsLiveCount() throws InterruptedException {
+        UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter();
+        assertTrue(counter.add(-1), "A new value should be reported");
+        assertFalse(counter.add(-1), "A seen value should not be reported");
+        counter.addAll(new int[]{-1, 0, 63, 64}, 4);
+        assertEquals(4, counter.getUniqCountAsLong(), "Expected 4 unique values");
+
+        int numThreads = 4;
+        int valuesPerThread = 10_000;
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            // the threads overlap by half, so some adds race on the same bits
+            int start = i * valuesPerThread / 2;
+            threads[i] = new Thread(() -> {
+                for (int j = start; j < start + valuesPerThread; j++) {
+                    counter.add(j);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long expected = 1 + (numThreads + 1) * valuesPerThread / 2;
+        assertEquals(expected, counter.getUniqCountAsLong(), "Unexpected live count");
+        assertEquals(expected, counter.getUniqCountByPopcount(), "Unexpected popcount");
+    }
+
+    @Test
+    public void testOffHeapStorage() {
+        try (UniqIntCounter counter = UniqIntCounterType.OFF_HEAP_HUGE_PAGES.create()) {
+            counter.add(1);
+            counter.add(-1);
+            counter.add(Integer.MIN_VALUE);
+            counter.add(1);
+            assertEquals(3, counter.getUniqCount(), "Expected 3 unique values");
+        }
+    }
+
+    @Test
+    public void testAddAll() {
+        UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter();
+        int[] values = {5, -1, 3, 31, 32, 5, Integer.MIN_VALUE, -1, 0, 33, 3};
+        counter.addAll(values, values.length - 1);
+        counter.add(0);
+        assertEquals(8, counter.getUniqCount(), "Expected 8 unique values");
+    }
+
+    @Test
+    public void testBatchAddsValuesOnFlush() {
+        UniqIntThreadSafeCounter counter = new UniqIntThreadSafeCounter();
+        UniqIntBatch batch = new UniqIntBatch(counter, 4);
+        for (int i = 0; i < 6; i++) {
+            batch.add(i);
+        }
+        assertEquals(4, counter.getUniqCount(), "Expected only the first full batch to be flushed");
+        batch.flush();
+        assertEquals(6, counter.getUniqCount(), "Expected 6 unique values after flush");
+    }
+
     @Disabled
     @Test
     public void testConcurrentAddSameValues() throws InterruptedException, ExecutionException {
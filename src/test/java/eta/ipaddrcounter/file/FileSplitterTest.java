@@ -1,6 +1,5 @@
 package eta.ipaddrcounter.file;
 
-import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -13,7 +12,6 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@Disabled
 class FileSplitterTest {
 
     @TempDir
@@ -127,4 +125,35 @@ class FileSplitterTest {
         assertEquals(0, only.start(), "Chunk should start at 0");
         assertEquals(3, only.end(), "Chunk should have size 3");
     }
+
+    @Test
+    void testThousandsOfChunksAreFoundInParallel() throws IOException {
+        // Setup: lines of different lengths, one of them longer than several chunks
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            content.append(i).append('.').append(i % 256).append(".0.1\n");
+            if (i == 10_000) {
+                content.append("x".repeat(5_000)).append('\n');
+            }
+        }
+        File file = tempDir.resolve("manyChunks.txt").toFile();
+        Files.writeString(file.toPath(), content);
+
+        // Execution
+        List<FileChunk> chunks = FileSplitter.splitOnNewLineAlignedChunks(5_000, file, 1);
+
+        // Assertion
+        assertTrue(chunks.size() > 4_000, "Expected thousands of chunks, got " + chunks.size());
+        assertEquals(0, chunks.get(0).start(), "First chunk should start at 0");
+        assertEquals(file.length(), chunks.get(chunks.size() - 1).end(), "Last chunk should end at file size");
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        for (int i = 0; i < chunks.size(); i++) {
+            FileChunk chunk = chunks.get(i);
+            assertTrue(chunk.end() > chunk.start(), "Chunks must not be empty");
+            assertEquals('\n', bytes[(int) chunk.end() - 1], "Chunk ending does not align with newline character");
+            if (i < chunks.size() - 1) {
+                assertEquals(chunk.end(), chunks.get(i + 1).start(), "Chunks are not contiguous");
+            }
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package eta.ipaddrcounter.file;
+
+import eta.ipaddrcounter.TestFileGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GzipFilesTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testBgzfRegionsReadEveryLineOnce() throws IOException {
+        Random random = new Random(5);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            // some lines are longer than a block, so they span several blocks and regions
+            content.append("line-").append(i).append("x".repeat(random.nextInt(10) == 0 ? 200 : random.nextInt(5)))
+                    .append('\n');
+        }
+        byte[] data = content.toString().getBytes(StandardCharsets.US_ASCII);
+        Path file = tempDir.resolve("lines.txt.gz");
+        TestFileGenerator.writeBgzf(file, data, () -> 1 + random.nextInt(60));
+
+        assertTrue(GzipFiles.isGzip(file.toFile()), "A BGZF file is a gzip file");
+        for (int targetRegions : new int[]{1, 3, 17, 100_000}) {
+            List<GzipRegion> regions = GzipFiles.splitOnRegions(targetRegions, file.toFile());
+            assertTrue(regions.size() <= targetRegions, "Too many regions");
+            assertArrayEquals(data, readRegions(regions), "Regions must contain every line exactly once");
+        }
+    }
+
+    @Test
+    void testPlainGzipIsOneRegion() throws IOException {
+        byte[] data = "10.0.0.1\n10.0.0.2\n10.0.0.3".getBytes(StandardCharsets.US_ASCII);
+        Path file = tempDir.resolve("ips.txt.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(data);
+        }
+
+        List<GzipRegion> regions = GzipFiles.splitOnRegions(8, file.toFile());
+
+        assertEquals(1, regions.size(), "A gzip file without BGZF blocks cannot be split");
+        assertArrayEquals(data, readRegions(regions), "The region must contain the whole file");
+        Path plainFile = Files.writeString(tempDir.resolve("ips.txt"), "10.0.0.1\n");
+        assertFalse(GzipFiles.isGzip(plainFile.toFile()), "A text file is not a gzip file");
+    }
+
+    private static byte[] readRegions(List<GzipRegion> regions) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (GzipRegion region : regions) {
+            try (InputStream in = GzipFiles.open(region)) {
+                in.transferTo(out);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -1,15 +1,16 @@
 package eta.ipaddrcounter.task.queued;
 
+import eta.ipaddrcounter.concurrency.RingBufferQueue;
 import eta.ipaddrcounter.file.FastByteBuffer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -35,8 +36,8 @@ public class NewLineAlignedBufferProducerTest {
         // Create the freeBuffers and workQueue.
         // Ensure that the total data does not exceed the number of free buffers.
         int freeBufferCount = 10;
-        BlockingQueue<FastByteBuffer> freeBuffers = new ArrayBlockingQueue<>(freeBufferCount);
-        BlockingQueue<FastByteBuffer> workQueue = new ArrayBlockingQueue<>(freeBufferCount);
+        RingBufferQueue<FastByteBuffer> freeBuffers = new RingBufferQueue<>(freeBufferCount);
+        RingBufferQueue<FastByteBuffer> workQueue = new RingBufferQueue<>(freeBufferCount);
 
         // Populate freeBuffers.
         for (int i = 0; i < freeBufferCount; i++) {
@@ -73,4 +74,89 @@ public class NewLineAlignedBufferProducerTest {
             assertEquals('\n', lastByte, "Buffer must end with a newline character");
         }
     }
+
+    @Test
+    public void testBuffersContainEveryByteOnceInOrder() throws IOException, InterruptedException {
+        // Lines of varying length, the last one without a newline
+        StringBuilder contentBuilder = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            contentBuilder.append(i * 7919 % 256).append('.').append(i).append(".0.").append(i % 10).append("\n");
+        }
+        contentBuilder.append("10.20.30.40");
+        File tempFile = tempDir.resolve("lines.txt").toFile();
+        java.nio.file.Files.writeString(tempFile.toPath(), contentBuilder.toString(), StandardCharsets.US_ASCII);
+
+        int bufferSize = 64;
+        int freeBufferCount = 128;
+        RingBufferQueue<FastByteBuffer> freeBuffers = new RingBufferQueue<>(freeBufferCount);
+        RingBufferQueue<FastByteBuffer> workQueue = new RingBufferQueue<>(freeBufferCount + 1);
+        for (int i = 0; i < freeBufferCount; i++) {
+            freeBuffers.put(new FastByteBuffer(new byte[bufferSize]));
+        }
+
+        new NewLineAlignedBufferProducer(tempFile, 0, tempFile.length(), freeBuffers, workQueue,
+                new AtomicLong(1), 1, bufferSize).run();
+
+        StringBuilder produced = new StringBuilder();
+        FastByteBuffer buffer;
+        while ((buffer = workQueue.take()) != NewLineAlignedBufferProducer.POISON_PILL) {
+            assertEquals('\n', buffer.array[buffer.length - 1], "Buffer must end with a newline character");
+            produced.append(new String(buffer.array, 0, buffer.length, StandardCharsets.US_ASCII));
+        }
+        assertEquals(contentBuilder + "\n", produced.toString(), "Buffers must contain the file exactly once");
+    }
+
+    @Test
+    public void testLineLongerThanBufferIsSkipped() throws IOException, InterruptedException {
+        String before = "1.2.3.4\n5.6.7.8\n";
+        String after = "9.10.11.12\n13.14.15.16\n";
+        File tempFile = tempDir.resolve("longLine.txt").toFile();
+        java.nio.file.Files.writeString(tempFile.toPath(), before + "1".repeat(300) + "\n" + after,
+                StandardCharsets.US_ASCII);
+
+        int bufferSize = 64;
+        int freeBufferCount = 16;
+        RingBufferQueue<FastByteBuffer> freeBuffers = new RingBufferQueue<>(freeBufferCount);
+        RingBufferQueue<FastByteBuffer> workQueue = new RingBufferQueue<>(freeBufferCount + 1);
+        for (int i = 0; i < freeBufferCount; i++) {
+            freeBuffers.put(new FastByteBuffer(new byte[bufferSize]));
+        }
+
+        new NewLineAlignedBufferProducer(tempFile, 0, tempFile.length(), freeBuffers, workQueue,
+                new AtomicLong(1), 1, bufferSize).run();
+
+        StringBuilder produced = new StringBuilder();
+        FastByteBuffer buffer;
+        while ((buffer = workQueue.take()) != NewLineAlignedBufferProducer.POISON_PILL) {
+            produced.append(new String(buffer.array, 0, buffer.length, StandardCharsets.US_ASCII));
+        }
+        assertEquals(before + after, produced.toString(), "No piece of the long line may reach a consumer");
+    }
+
+    @Test
+    public void testStreamLineLongerThanBufferIsSkipped() throws InterruptedException {
+        String before = "1.2.3.4\n5.6.7.8\n";
+        String after = "9.10.11.12\n13.14.15.16\n";
+        byte[] content = (before + "x".repeat(300) + "\n" + after).getBytes(StandardCharsets.US_ASCII);
+
+        int bufferSize = 64;
+        int freeBufferCount = 16;
+        RingBufferQueue<FastByteBuffer> freeBuffers = new RingBufferQueue<>(freeBufferCount);
+        RingBufferQueue<FastByteBuffer> workQueue = new RingBufferQueue<>(freeBufferCount + 1);
+        for (int i = 0; i < freeBufferCount; i++) {
+            freeBuffers.put(new FastByteBuffer(new byte[bufferSize]));
+        }
+
+        new NewLineAlignedBufferProducer(Channels.newChannel(new ByteArrayInputStream(content)), freeBuffers,
+                workQueue, new AtomicLong(1), 1, bufferSize).run();
+
+        StringBuilder produced = new StringBuilder();
+        FastByteBuffer buffer;
+        while ((buffer = workQueue.take()) != NewLineAlignedBufferProducer.POISON_PILL) {
+            produced.append(new String(buffer.array, 0, buffer.length, StandardCharsets.US_ASCII));
+            freeBuffers.put(buffer);
+        }
+        assertEquals(before + after, produced.toString(),
+                "The long line must be dropped and the stream read to the end");
+    }
 }